@@ -0,0 +1,59 @@
+package com.binn328.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * 벤치마크 하나를 워밍업한 뒤 정해진 시간 동안 반복 실행하여
+ * 처리량(ops/s)과 할당 속도(MB/s, bytes/op)를 출력한다.
+ * JMH의 Throughput 모드와 GC 프로파일러 출력을 흉내낸다.
+ * JMH 벤치마크는 jmh 폴더에 있으며, 이 클래스는 JMH를 받을 수 없는 곳에서 쓰는 대체 수단이다.
+ */
+class BenchmarkRunner {
+    private static final long WARMUP_NANOS = Long.getLong("bench.warmup.ms", 1000) * 1_000_000;
+    private static final long MEASURE_NANOS = Long.getLong("bench.measure.ms", 2000) * 1_000_000;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * 결과가 최적화로 사라지지 않도록 받아두는 곳
+     */
+    static volatile Object sink;
+
+    static void printHeader() {
+        System.out.printf("%-32s %14s %12s %14s%n", "benchmark", "ops/s", "MB/s", "bytes/op");
+    }
+
+    /**
+     * body를 반복 실행하며 측정하고 결과를 한 줄로 출력한다.
+     * @param name
+     * @param body
+     * @return 초당 실행 횟수
+     */
+    static double run(String name, Supplier<?> body) {
+        long thread = Thread.currentThread().getId();
+
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) sink = body.get();
+
+        long operations = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        end = start + MEASURE_NANOS;
+        long now;
+        do {
+            sink = body.get();
+            operations++;
+            now = System.nanoTime();
+        } while (now < end);
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        double seconds = (now - start) / 1e9;
+        System.out.printf("%-32s %14.1f %12.1f %14.1f%n", name,
+                operations / seconds,
+                allocated / seconds / (1024 * 1024),
+                (double) allocated / operations);
+        return operations / seconds;
+    }
+}
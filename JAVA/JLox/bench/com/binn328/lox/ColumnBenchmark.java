@@ -0,0 +1,162 @@
+package com.binn328.lox;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 계산 열과 필터 식을 행마다 Interpreter로 평가할 때와 ColumnExpr로 한꺼번에 평가할 때의 처리량을 비교한다.
+ * 행마다 평가할 때도 식은 ExprArena에 한 번만 파싱해 두고, 행마다 열 참조 리터럴의 값만 바꾸어 평가한다.
+ * 값은 박싱하지 않고 아레나의 tags, numbers, refs에 바로 쓰며, 문자열 열은 미리 심볼 ID로 바꾸어 둔다.
+ * 측정 한 번에 ROWS개의 행을 모두 평가하므로, 마지막에 초당 처리한 행 수를 따로 출력한다.
+ * 사용법: java -cp out com.binn328.lox.ColumnBenchmark
+ */
+public class ColumnBenchmark {
+    private static final int ROWS = 1 << 16;
+
+    private static final String[] EXPRESSIONS = {
+            "price * quantity * (1 - discount) + shipping",
+            "price * quantity > 1000 == premium",
+            "region + \"-\" + channel == \"north-web\"",
+    };
+
+    /**
+     * 열 참조를 행마다 값으로 바꾸어 Interpreter로 평가한다.
+     */
+    private static class RowInterpreter {
+        private final ExprArena arena;
+        private final Interpreter interpreter;
+        /**
+         * 열 참조 리터럴 노드와 그 열 번호
+         */
+        private final int[] references;
+        private final int[] referenceColumns;
+        /**
+         * 열 번호마다 열의 값. 문자열 열은 심볼 ID 배열(int[])로 바꾸어 둔다.
+         */
+        private final Object[] values;
+
+        RowInterpreter(LoxSession session, String source, Columns columns) {
+            arena = new Parser(session, new Scanner(session, source).scanBuffer())
+                    .withColumns(columns.names())
+                    .parseArena();
+            interpreter = new Interpreter(session);
+
+            int count = 0;
+            int[] nodes = new int[arena.count];
+            int[] indexes = new int[arena.count];
+            for (int expr = 0; expr < arena.count; expr++) {
+                if (arena.kinds[expr] == ExprArena.LITERAL && arena.literalTag(expr) == ExprArena.COLUMN) {
+                    nodes[count] = expr;
+                    indexes[count++] = arena.literalRef(expr);
+                }
+            }
+            references = Arrays.copyOf(nodes, count);
+            referenceColumns = Arrays.copyOf(indexes, count);
+
+            values = new Object[columns.size()];
+            for (int column = 0; column < values.length; column++) {
+                values[column] = columns.column(column);
+                if (values[column] instanceof String[]) {
+                    String[] strings = (String[]) values[column];
+                    int[] symbols = new int[strings.length];
+                    for (int row = 0; row < strings.length; row++) {
+                        symbols[row] = arena.tokens.symbolTable.intern(strings[row]);
+                    }
+                    values[column] = symbols;
+                }
+            }
+        }
+
+        Object[] evaluate(Columns columns) {
+            Object[] output = new Object[columns.rows()];
+            for (int row = 0; row < output.length; row++) {
+                for (int i = 0; i < references.length; i++) {
+                    set(references[i], values[referenceColumns[i]], row);
+                }
+                output[row] = interpreter.evaluate(arena);
+            }
+            return output;
+        }
+
+        private void set(int expr, Object column, int row) {
+            if (column instanceof double[]) {
+                arena.tags[expr] = ExprArena.NUMBER;
+                arena.numbers[expr] = ((double[]) column)[row];
+            } else if (column instanceof boolean[]) {
+                arena.tags[expr] = ((boolean[]) column)[row] ? ExprArena.TRUE : ExprArena.FALSE;
+            } else {
+                arena.tags[expr] = ExprArena.STRING;
+                arena.refs[expr] = ((int[]) column)[row];
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        Columns columns = columns(new Random(ROWS));
+        LoxSession session = new LoxSession();
+
+        BenchmarkRunner.printHeader();
+        double[][] rowsPerSecond = new double[EXPRESSIONS.length][];
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            String source = EXPRESSIONS[i];
+            RowInterpreter rows = new RowInterpreter(session, source, columns);
+            ColumnExpr batch = ColumnExpr.compile(session, source, columns);
+
+            // 같은 값을 내는지 먼저 확인한다.
+            check(source, rows.evaluate(columns), batch.evaluate(columns));
+
+            String name = "expression " + (i + 1);
+            rowsPerSecond[i] = new double[] {
+                    BenchmarkRunner.run(name + " per row", () -> rows.evaluate(columns)) * ROWS,
+                    BenchmarkRunner.run(name + " ColumnExpr", () -> batch.evaluate(columns)) * ROWS,
+            };
+        }
+
+        System.out.println();
+        System.out.printf("%-48s %16s %16s %8s%n", "expression", "per row rows/s", "batch rows/s", "speedup");
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            System.out.printf("%-48s %16.0f %16.0f %7.1fx%n", EXPRESSIONS[i],
+                    rowsPerSecond[i][0], rowsPerSecond[i][1], rowsPerSecond[i][1] / rowsPerSecond[i][0]);
+        }
+    }
+
+    private static Columns columns(Random random) {
+        double[] price = new double[ROWS];
+        double[] quantity = new double[ROWS];
+        double[] discount = new double[ROWS];
+        double[] shipping = new double[ROWS];
+        boolean[] premium = new boolean[ROWS];
+        String[] region = new String[ROWS];
+        String[] channel = new String[ROWS];
+        String[] regions = {"north", "south", "east", "west"};
+        String[] channels = {"web", "store", "phone"};
+        for (int row = 0; row < ROWS; row++) {
+            price[row] = 1 + random.nextInt(500);
+            quantity[row] = 1 + random.nextInt(10);
+            discount[row] = random.nextInt(30) / 100.0;
+            shipping[row] = random.nextInt(20);
+            premium[row] = random.nextBoolean();
+            region[row] = regions[random.nextInt(regions.length)];
+            channel[row] = channels[random.nextInt(channels.length)];
+        }
+
+        return new Columns()
+                .add("price", price)
+                .add("quantity", quantity)
+                .add("discount", discount)
+                .add("shipping", shipping)
+                .add("premium", premium)
+                .add("region", region)
+                .add("channel", channel);
+    }
+
+    private static void check(String source, Object[] expected, Object actual) {
+        for (int row = 0; row < expected.length; row++) {
+            Object value = Array.get(actual, row);
+            if (!expected[row].equals(value)) {
+                throw new IllegalStateException(source + ": row " + row + " is " + value + ", expected " + expected[row]);
+            }
+        }
+    }
+}
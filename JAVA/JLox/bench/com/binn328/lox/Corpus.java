@@ -0,0 +1,135 @@
+package com.binn328.lox;
+
+import java.util.Random;
+
+/**
+ * 벤치마크에 쓰는 합성 소스 코드를 만든다.
+ * 모두 식 하나로 이루어져 있으며, 같은 크기면 항상 같은 소스를 만든다.
+ */
+class Corpus {
+    /**
+     * 괄호가 depth 단계로 중첩된 식: (((1 + 1) + 1) + 1) ...
+     * @param depth
+     * @return
+     */
+    static String deep(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) builder.append('(');
+        builder.append('1');
+        for (int i = 0; i < depth; i++) builder.append(" + 1)");
+        return builder.toString();
+    }
+
+    /**
+     * 이항 연산자가 width개 이어진 식: 1 + 2 * 3 - 4 ...
+     * @param width
+     * @return
+     */
+    static String wide(int width) {
+        String[] operators = {" + ", " * ", " - ", " / ", " < ", " == "};
+        StringBuilder builder = new StringBuilder("0");
+        for (int i = 0; i < width; i++) {
+            builder.append(operators[i % operators.length]).append(i % 100);
+            if (i % 16 == 15) builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 문자열 리터럴 count개를 이어 붙이는 식
+     * @param count
+     * @return
+     */
+    static String strings(int count) {
+        Random random = new Random(count);
+        StringBuilder builder = new StringBuilder("\"\"");
+        for (int i = 0; i < count; i++) {
+            builder.append(" + \"");
+            int length = 4 + random.nextInt(24);
+            for (int j = 0; j < length; j++) builder.append((char) ('a' + random.nextInt(26)));
+            builder.append('"');
+            if (i % 8 == 7) builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 정수와 소수 리터럴 count개를 더하는 식
+     * @param count
+     * @return
+     */
+    static String numbers(int count) {
+        Random random = new Random(count);
+        StringBuilder builder = new StringBuilder("0");
+        for (int i = 0; i < count; i++) {
+            builder.append(" + ");
+            if (random.nextBoolean()) {
+                builder.append(random.nextInt(1_000_000));
+            } else {
+                builder.append(random.nextInt(10_000)).append('.').append(random.nextInt(1000));
+            }
+            if (i % 16 == 15) builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 사칙연산과 단항 "-", 괄호로 이루어진 숫자 식. 트리의 깊이는 depth를 넘지 않는다.
+     * @param depth
+     * @return
+     */
+    static String arithmetic(int depth) {
+        StringBuilder builder = new StringBuilder();
+        arithmetic(builder, new Random(depth), depth);
+        return builder.toString();
+    }
+
+    private static void arithmetic(StringBuilder builder, Random random, int depth) {
+        if (depth == 0 || random.nextInt(8) == 0) {
+            builder.append(1 + random.nextInt(99));
+            return;
+        }
+
+        switch (random.nextInt(6)) {
+            case 0:
+                builder.append("-(");
+                arithmetic(builder, random, depth - 1);
+                builder.append(')');
+                return;
+            case 1:
+                builder.append('(');
+                arithmetic(builder, random, depth - 1);
+                builder.append(')');
+                return;
+            default:
+                String[] operators = {" + ", " - ", " * ", " / "};
+                builder.append('(');
+                arithmetic(builder, random, depth - 1);
+                builder.append(operators[random.nextInt(operators.length)]);
+                arithmetic(builder, random, depth - 1);
+                builder.append(')');
+        }
+    }
+
+    /**
+     * 숫자 비교의 결과를 "==", "!="로 count번 이어 비교하는 참/거짓 식: 1 < 2 == !(3 >= 4) != ...
+     * @param count
+     * @return
+     */
+    static String comparisons(int count) {
+        Random random = new Random(count);
+        String[] comparisons = {" < ", " <= ", " > ", " >= "};
+        StringBuilder builder = new StringBuilder("true");
+        for (int i = 0; i < count; i++) {
+            builder.append(random.nextBoolean() ? " == " : " != ");
+            boolean not = random.nextInt(4) == 0;
+            if (not) builder.append("!(");
+            builder.append(random.nextInt(100))
+                    .append(comparisons[random.nextInt(comparisons.length)])
+                    .append(random.nextInt(100));
+            if (not) builder.append(')');
+            if (i % 8 == 7) builder.append('\n');
+        }
+        return builder.toString();
+    }
+}
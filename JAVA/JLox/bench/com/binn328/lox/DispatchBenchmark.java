@@ -0,0 +1,216 @@
+package com.binn328.lox;
+
+import java.util.Arrays;
+
+/**
+ * 같은 구문 트리를 노드 분기 방식만 바꾸어 평가하고 처리량과 할당량을 비교한다.
+ * - Visitor<Object>: 제네릭 visitor. 결과를 Object로 돌려받으므로 숫자 결과마다 박싱된다.
+ * - DoubleVisitor, BooleanVisitor: 기본 타입을 그대로 반환하는 visitor
+ * - kind switch: 노드의 종류 태그로 switch하는 정적 메소드
+ * - Interpreter: 실제 인터프리터(작업 스택과 종류 태그 switch)
+ * - Jit: 트리를 JVM 클래스로 컴파일한 코드
+ * - ExecutionTree: 실행하면서 피연산자 타입에 맞게 특수화된 노드
+ * 세 평가기 모두 벤치마크 식처럼 타입이 맞는 식만 다룬다.
+ * 결과는 측정 한 번마다 한 번 박싱되어 BenchmarkRunner로 넘어간다.
+ * 사용법: java -cp out com.binn328.lox.DispatchBenchmark
+ */
+public class DispatchBenchmark {
+    private static class GenericEvaluator implements Expr.Visitor<Object> {
+        @Override
+        public Object visitBinaryExpr(Expr.Binary expr) {
+            Object left = expr.left.accept(this);
+            Object right = expr.right.accept(this);
+            switch (expr.operator.type) {
+                case PLUS: return (double) left + (double) right;
+                case MINUS: return (double) left - (double) right;
+                case STAR: return (double) left * (double) right;
+                case SLASH: return (double) left / (double) right;
+                case GREATER: return (double) left > (double) right;
+                case GREATER_EQUAL: return (double) left >= (double) right;
+                case LESS: return (double) left < (double) right;
+                case LESS_EQUAL: return (double) left <= (double) right;
+                case EQUAL_EQUAL: return Interpreter.isEqual(left, right);
+                case BANG_EQUAL: return !Interpreter.isEqual(left, right);
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Object visitLiteralExpr(Expr.Literal expr) {
+            return expr.value;
+        }
+
+        @Override
+        public Object visitUnaryExpr(Expr.Unary expr) {
+            Object right = expr.right.accept(this);
+            if (expr.operator.type == TokenType.MINUS) return -(double) right;
+            return !Interpreter.isTruthy(right);
+        }
+    }
+
+    private static class DoubleEvaluator implements Expr.DoubleVisitor {
+        @Override
+        public double visitBinaryExpr(Expr.Binary expr) {
+            double left = expr.left.accept(this);
+            double right = expr.right.accept(this);
+            switch (expr.operator.type) {
+                case PLUS: return left + right;
+                case MINUS: return left - right;
+                case STAR: return left * right;
+                case SLASH: return left / right;
+            }
+            throw new IllegalArgumentException("Not a number expression.");
+        }
+
+        @Override
+        public double visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public double visitLiteralExpr(Expr.Literal expr) {
+            return (double) expr.value;
+        }
+
+        @Override
+        public double visitUnaryExpr(Expr.Unary expr) {
+            return -expr.right.accept(this);
+        }
+    }
+
+    private static class BooleanEvaluator implements Expr.BooleanVisitor {
+        private final DoubleEvaluator numbers = new DoubleEvaluator();
+
+        @Override
+        public boolean visitBinaryExpr(Expr.Binary expr) {
+            switch (expr.operator.type) {
+                case GREATER: return expr.left.accept(numbers) > expr.right.accept(numbers);
+                case GREATER_EQUAL: return expr.left.accept(numbers) >= expr.right.accept(numbers);
+                case LESS: return expr.left.accept(numbers) < expr.right.accept(numbers);
+                case LESS_EQUAL: return expr.left.accept(numbers) <= expr.right.accept(numbers);
+                case EQUAL_EQUAL: return expr.left.accept(this) == expr.right.accept(this);
+                case BANG_EQUAL: return expr.left.accept(this) != expr.right.accept(this);
+            }
+            throw new IllegalArgumentException("Not a boolean expression.");
+        }
+
+        @Override
+        public boolean visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public boolean visitLiteralExpr(Expr.Literal expr) {
+            return (boolean) expr.value;
+        }
+
+        @Override
+        public boolean visitUnaryExpr(Expr.Unary expr) {
+            return !expr.right.accept(this);
+        }
+    }
+
+    /**
+     * 종류 태그로 분기하여 숫자 식을 평가한다.
+     */
+    private static double number(Expr expr) {
+        switch (expr.kind) {
+            case Expr.LITERAL:
+                return (double) ((Expr.Literal) expr).value;
+            case Expr.GROUPING:
+                return number(((Expr.Grouping) expr).expression);
+            case Expr.UNARY:
+                return -number(((Expr.Unary) expr).right);
+            case Expr.BINARY: {
+                Expr.Binary binary = (Expr.Binary) expr;
+                double left = number(binary.left);
+                double right = number(binary.right);
+                switch (binary.operator.type) {
+                    case PLUS: return left + right;
+                    case MINUS: return left - right;
+                    case STAR: return left * right;
+                    case SLASH: return left / right;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Not a number expression.");
+    }
+
+    /**
+     * 종류 태그로 분기하여 참/거짓 식을 평가한다.
+     */
+    private static boolean bool(Expr expr) {
+        switch (expr.kind) {
+            case Expr.LITERAL:
+                return (boolean) ((Expr.Literal) expr).value;
+            case Expr.GROUPING:
+                return bool(((Expr.Grouping) expr).expression);
+            case Expr.UNARY:
+                return !bool(((Expr.Unary) expr).right);
+            case Expr.BINARY: {
+                Expr.Binary binary = (Expr.Binary) expr;
+                switch (binary.operator.type) {
+                    case GREATER: return number(binary.left) > number(binary.right);
+                    case GREATER_EQUAL: return number(binary.left) >= number(binary.right);
+                    case LESS: return number(binary.left) < number(binary.right);
+                    case LESS_EQUAL: return number(binary.left) <= number(binary.right);
+                    case EQUAL_EQUAL: return bool(binary.left) == bool(binary.right);
+                    case BANG_EQUAL: return bool(binary.left) != bool(binary.right);
+                }
+            }
+        }
+        throw new IllegalArgumentException("Not a boolean expression.");
+    }
+
+    public static void main(String[] args) {
+        LoxSession session = new LoxSession();
+        Expr arithmetic = parse(session, Corpus.arithmetic(12));
+        Expr comparisons = parse(session, Corpus.comparisons(256));
+
+        GenericEvaluator generic = new GenericEvaluator();
+        DoubleEvaluator doubles = new DoubleEvaluator();
+        BooleanEvaluator booleans = new BooleanEvaluator();
+        Interpreter interpreter = new Interpreter(session);
+        Jit.Compiled arithmeticJit = Jit.compile(arithmetic);
+        Jit.Compiled comparisonsJit = Jit.compile(comparisons);
+        ExecutionTree arithmeticTree = ExecutionTree.build(arithmetic);
+        ExecutionTree comparisonsTree = ExecutionTree.build(comparisons);
+
+        // 같은 값을 내는지 먼저 확인한다.
+        check(arithmetic.accept(generic), arithmetic.accept(doubles), number(arithmetic), interpreter.evaluate(arithmetic),
+                arithmeticJit.evaluate(), arithmeticTree.execute());
+        check(comparisons.accept(generic), comparisons.accept(booleans), bool(comparisons), interpreter.evaluate(comparisons),
+                comparisonsJit.evaluate(), comparisonsTree.execute());
+
+        BenchmarkRunner.printHeader();
+        BenchmarkRunner.run("arithmetic Visitor<Object>", () -> arithmetic.accept(generic));
+        BenchmarkRunner.run("arithmetic DoubleVisitor", () -> arithmetic.accept(doubles));
+        BenchmarkRunner.run("arithmetic kind switch", () -> number(arithmetic));
+        BenchmarkRunner.run("arithmetic Interpreter", () -> interpreter.evaluate(arithmetic));
+        BenchmarkRunner.run("arithmetic Jit", arithmeticJit::evaluate);
+        BenchmarkRunner.run("arithmetic ExecutionTree", arithmeticTree::execute);
+        BenchmarkRunner.run("comparisons Visitor<Object>", () -> comparisons.accept(generic));
+        BenchmarkRunner.run("comparisons BooleanVisitor", () -> comparisons.accept(booleans));
+        BenchmarkRunner.run("comparisons kind switch", () -> bool(comparisons));
+        BenchmarkRunner.run("comparisons Interpreter", () -> interpreter.evaluate(comparisons));
+        BenchmarkRunner.run("comparisons Jit", comparisonsJit::evaluate);
+        BenchmarkRunner.run("comparisons ExecutionTree", comparisonsTree::execute);
+    }
+
+    private static Expr parse(LoxSession session, String source) {
+        return new Parser(session, new Scanner(session, source).scanBuffer()).parse();
+    }
+
+    private static void check(Object... results) {
+        for (Object result : results) {
+            if (!result.equals(results[0])) {
+                throw new IllegalStateException("Evaluators disagree: " + Arrays.toString(results));
+            }
+        }
+    }
+}
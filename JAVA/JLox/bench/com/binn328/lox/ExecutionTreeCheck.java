@@ -0,0 +1,164 @@
+package com.binn328.lox;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ExecutionTree의 노드가 처음 실행할 때 특수화되고, 다른 타입을 만나면 일반 노드로 바뀌는지 확인한다.
+ * 이 문법에는 변수가 없어 실행 중에 값의 타입이 바뀌지 않으므로, 특수화된 트리의 리터럴 값을
+ * 모양이 같은 다른 소스의 리터럴 값으로 리플렉션을 써서 바꾸어 타입 변화를 일으킨다.
+ * 실행 결과와 에러는 바꾼 소스를 Interpreter로 평가한 것과 같아야 한다.
+ * 다른 결과가 하나라도 나오면 예외를 던진다.
+ * 사용법: java -cp out com.binn328.lox.ExecutionTreeCheck
+ */
+public class ExecutionTreeCheck {
+    /**
+     * 처음 소스, 처음 실행한 뒤의 트리, 리터럴을 바꿀 소스, 바꾼 뒤 실행한 트리
+     */
+    private static final String[][] CASES = {
+            {"1 + 2 * 3",
+                    "(+:number 1.0 (*:number 2.0 3.0))",
+                    "\"a\" + 2 * 3",
+                    "(+:generic a (*:number 2.0 3.0))"},
+            {"-(1 + 2) == 3",
+                    "(==:number (-:number (+:number 1.0 2.0)) 3.0)",
+                    "-(\"a\" + \"b\") == 3",
+                    "(==:number (-:generic (+:generic a b)) 3.0)"},
+            {"(1 + 2) * (3 - 4)",
+                    "(*:number (+:number 1.0 2.0) (-:number 3.0 4.0))",
+                    "(\"x\" + \"y\") * (3 - 4)",
+                    "(*:generic (+:generic x y) (-:number 3.0 4.0))"},
+            {"\"a\" + \"b\" == \"ab\"",
+                    "(==:string (+:string a b) ab)",
+                    "1 + 2 == \"ab\"",
+                    "(==:generic (+:generic 1.0 2.0) ab)"},
+            {"!true == false",
+                    "(==:boolean (!:boolean true) false)",
+                    "!1 == false",
+                    "(==:boolean (!:generic 1.0) false)"},
+            {"1 - -2 > 3",
+                    "(>:number (-:number 1.0 (-:number 2.0)) 3.0)",
+                    "1 - -nil > 3",
+                    "(>:number (-:number 1.0 (-:generic nil)) 3.0)"},
+    };
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        for (String[] testCase : CASES) {
+            check(testCase[0], testCase[1], testCase[2], testCase[3]);
+        }
+        System.out.println(CASES.length + " trees specialize and despecialize as expected");
+    }
+
+    private static void check(String source, String specialized, String changedSource, String generalized)
+            throws ReflectiveOperationException {
+        ExecutionTree tree = ExecutionTree.build(parse(source));
+        List<ExecutionTree.Node> literals = literals(tree);
+        expect(source, "uninitialized tree", !tree.describe().matches(".*:(number|string|boolean|generic).*"));
+        expect(source, "rewrites before execution", tree.rewrites() == 0);
+
+        // 처음 실행하면 모든 연산자 노드가 피연산자의 타입으로 특수화된다.
+        compare(source, tree, source);
+        expect(source, "specialized tree " + tree.describe(), tree.describe().equals(specialized));
+        int rewrites = tree.rewrites();
+        compare(source, tree, source);
+        expect(source, "stable rewrites", tree.rewrites() == rewrites);
+
+        // 다른 타입을 만난 노드만 일반 노드로 바뀐다.
+        setLiterals(literals, literals(ExecutionTree.build(parse(changedSource))));
+        compare(source, tree, changedSource);
+        expect(source, "generalized tree " + tree.describe(), tree.describe().equals(generalized));
+        int generalizedRewrites = tree.rewrites();
+        expect(source, "rewrites after type change", generalizedRewrites > rewrites);
+
+        // 일반 노드는 원래 타입이 돌아와도 다시 특수화되지 않는다.
+        setLiterals(literals, literals(ExecutionTree.build(parse(source))));
+        compare(source, tree, source);
+        expect(source, "rewrites after restoring types", tree.rewrites() == generalizedRewrites);
+    }
+
+    private static Expr parse(String source) {
+        LoxSession session = new LoxSession();
+        Expr expression = new Parser(session, new Scanner(session, source).scanBuffer()).parse();
+        if (expression == null) throw new IllegalStateException("Could not parse " + source);
+        return expression;
+    }
+
+    /**
+     * 트리를 실행한 결과가 expectedSource를 Interpreter로 평가한 결과와 같은지 확인한다.
+     */
+    private static void compare(String source, ExecutionTree tree, String expectedSource) {
+        Object expected = null;
+        Object actual = null;
+        RuntimeError expectedError = null;
+        RuntimeError actualError = null;
+        try {
+            expected = new Interpreter(new LoxSession()).evaluate(parse(expectedSource));
+        } catch (RuntimeError error) {
+            expectedError = error;
+        }
+        try {
+            actual = tree.execute();
+        } catch (RuntimeError error) {
+            actualError = error;
+        }
+
+        boolean same;
+        if (expectedError != null) {
+            same = actualError != null && actualError.getMessage().equals(expectedError.getMessage())
+                    && actualError.token.lexeme().equals(expectedError.token.lexeme());
+        } else {
+            same = actualError == null && Objects.equals(expected, actual)
+                    && (expected == null || expected.getClass() == actual.getClass());
+        }
+        expect(source, "result " + (actualError != null ? actualError.getMessage() : actual)
+                + " for " + expectedSource, same);
+    }
+
+    private static void expect(String source, String what, boolean condition) {
+        if (!condition) throw new IllegalStateException(source + ": unexpected " + what);
+    }
+
+    /**
+     * 트리의 리터럴 노드를 왼쪽부터 모은다.
+     */
+    private static List<ExecutionTree.Node> literals(ExecutionTree tree) throws ReflectiveOperationException {
+        Field rootField = ExecutionTree.class.getDeclaredField("root");
+        rootField.setAccessible(true);
+        Object root = rootField.get(tree);
+        Field childField = root.getClass().getDeclaredField("child");
+        childField.setAccessible(true);
+
+        List<ExecutionTree.Node> literals = new ArrayList<>();
+        collect((ExecutionTree.Node) childField.get(root), literals);
+        return literals;
+    }
+
+    private static void collect(ExecutionTree.Node node, List<ExecutionTree.Node> literals) {
+        if (node instanceof ExecutionTree.BinaryNode) {
+            collect(((ExecutionTree.BinaryNode) node).left, literals);
+            collect(((ExecutionTree.BinaryNode) node).right, literals);
+        } else if (node instanceof ExecutionTree.UnaryNode) {
+            collect(((ExecutionTree.UnaryNode) node).operand, literals);
+        } else {
+            literals.add(node);
+        }
+    }
+
+    /**
+     * 리터럴 노드의 값을 다른 트리의 같은 자리에 있는 리터럴 값으로 바꾼다.
+     */
+    private static void setLiterals(List<ExecutionTree.Node> targets, List<ExecutionTree.Node> sources)
+            throws ReflectiveOperationException {
+        if (targets.size() != sources.size()) throw new IllegalArgumentException("Trees have different shapes.");
+
+        for (int i = 0; i < targets.size(); i++) {
+            for (String name : new String[] {"value", "number"}) {
+                Field field = targets.get(i).getClass().getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(targets.get(i), field.get(sources.get(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.binn328.lox;
+
+/**
+ * jmh 폴더의 FrontEndBenchmark와 같은 측정을 JMH 없이 BenchmarkRunner로 한다.
+ * JMH를 받을 수 없는 곳에서 쓰는 대체 수단이다.
+ * 사용법: java -cp out com.binn328.lox.FrontEndLoopBenchmark [corpus...]
+ * corpus는 deep, wide, strings, numbers 중에서 고르며, 생략하면 모두 측정한다.
+ * 측정 시간은 -Dbench.warmup.ms, -Dbench.measure.ms로 바꿀 수 있다.
+ * 반복마다 새 LoxSession을 만들어, 앞선 반복이 채워둔 심볼 테이블 덕에 스캔이 빨라 보이지 않게 한다.
+ * 단순 반복 루프로 재므로, 결과는 변경 전후를 비교하는 참고치로만 본다.
+ */
+public class FrontEndLoopBenchmark {
+    public static void main(String[] args) {
+        String[] corpora = args.length > 0 ? args : new String[] {"deep", "wide", "strings", "numbers"};
+
+        BenchmarkRunner.printHeader();
+        for (String corpus : corpora) {
+            switch (corpus) {
+                case "deep":
+                    measure("deep", 100, Corpus.deep(100));
+                    measure("deep", 1_000, Corpus.deep(1_000));
+                    measure("deep", 10_000, Corpus.deep(10_000));
+                    break;
+                case "wide":
+                    measure("wide", 1_000, Corpus.wide(1_000));
+                    measure("wide", 10_000, Corpus.wide(10_000));
+                    break;
+                case "strings":
+                    measure("strings", 1_000, Corpus.strings(1_000));
+                    measure("strings", 10_000, Corpus.strings(10_000));
+                    break;
+                case "numbers":
+                    measure("numbers", 1_000, Corpus.numbers(1_000));
+                    measure("numbers", 10_000, Corpus.numbers(10_000));
+                    break;
+                default:
+                    System.err.println("Unknown corpus: " + corpus);
+                    System.exit(64);
+            }
+        }
+    }
+
+    private static void measure(String corpus, int size, String source) {
+        String name = corpus + "/" + size;
+        LoxSession session = new LoxSession();
+        TokenBuffer tokens = new Scanner(session, source).scanBuffer();
+        Expr expr = new Parser(session, tokens).parse();
+        AstPrinter printer = new AstPrinter();
+
+        BenchmarkRunner.run(name + " scan", () -> new Scanner(new LoxSession(), source).scanBuffer());
+        BenchmarkRunner.run(name + " parse", () -> new Parser(new LoxSession(), tokens).parse());
+        BenchmarkRunner.run(name + " parse-arena", () -> new Parser(new LoxSession(), tokens).parseArena());
+        BenchmarkRunner.run(name + " print", () -> printer.print(expr));
+    }
+}
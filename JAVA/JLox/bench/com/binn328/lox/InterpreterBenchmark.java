@@ -0,0 +1,106 @@
+package com.binn328.lox;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 박싱 경로와 박싱 없는 경로가 식 하나를 평가할 때 할당하는 바이트 수를 나란히 비교한다.
+ * 박싱 경로는 연산마다 Double을 돌려주는 단순한 재귀 트리 순회 평가기로 흉내낸다.
+ */
+public class InterpreterBenchmark {
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 200_000;
+
+    /**
+     * 모든 연산 결과를 Double로 돌려주는 평가기
+     */
+    private static class BoxedEvaluator implements Expr.Visitor<Object> {
+        @Override
+        public Object visitBinaryExpr(Expr.Binary expr) {
+            double left = (double) expr.left.accept(this);
+            double right = (double) expr.right.accept(this);
+            switch (expr.operator.type) {
+                case MINUS: return left - right;
+                case PLUS: return left + right;
+                case SLASH: return left / right;
+                case STAR: return left * right;
+                case GREATER: return left > right;
+                case LESS: return left < right;
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Object visitLiteralExpr(Expr.Literal expr) {
+            return expr.value;
+        }
+
+        @Override
+        public Object visitUnaryExpr(Expr.Unary expr) {
+            return -(double) expr.right.accept(this);
+        }
+    }
+
+    public static void main(String[] args) {
+        // (1 + 2) * 3 - 4 / 5 + ... 형태의 숫자 식을 만든다.
+        StringBuilder source = new StringBuilder("1");
+        String[] operators = {" + ", " * ", " - ", " / "};
+        for (int i = 0; i < 64; i++) {
+            source.append(operators[i % operators.length]).append("(").append(i + 2).append(" - -1)");
+        }
+
+        LoxSession session = new LoxSession();
+        Expr expr = new Parser(session, new Scanner(session, source.toString()).scanBuffer()).parse();
+        BoxedEvaluator boxed = new BoxedEvaluator();
+        Interpreter interpreter = new Interpreter(session);
+
+        int[] counts = new int[4];
+        count(expr, counts);
+        System.out.printf("nodes: %d (binary %d, unary %d, grouping %d, literal %d)%n",
+                counts[Expr.BINARY] + counts[Expr.UNARY] + counts[Expr.GROUPING] + counts[Expr.LITERAL],
+                counts[Expr.BINARY], counts[Expr.UNARY], counts[Expr.GROUPING], counts[Expr.LITERAL]);
+        report("boxed   (Visitor<Object>)", measure(() -> boxed.visitBinaryExpr((Expr.Binary) expr)));
+        report("unboxed (value stacks)   ", measure(() -> interpreter.evaluate(expr)));
+    }
+
+    /**
+     * 트리의 노드 수를 종류 태그별로 센다.
+     */
+    private static void count(Expr expr, int[] counts) {
+        counts[expr.kind]++;
+        switch (expr.kind) {
+            case Expr.BINARY:
+                count(((Expr.Binary) expr).left, counts);
+                count(((Expr.Binary) expr).right, counts);
+                break;
+            case Expr.GROUPING:
+                count(((Expr.Grouping) expr).expression, counts);
+                break;
+            case Expr.UNARY:
+                count(((Expr.Unary) expr).right, counts);
+                break;
+        }
+    }
+
+    private static double measure(Runnable body) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP; i++) body.run();
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) body.run();
+        long after = threads.getThreadAllocatedBytes(thread);
+
+        return (double) (after - before) / ITERATIONS;
+    }
+
+    private static void report(String name, double bytesPerEvaluation) {
+        System.out.printf("%s: %10.1f bytes/evaluation%n", name, bytesPerEvaluation);
+    }
+}
@@ -0,0 +1,85 @@
+package com.binn328.lox;
+
+import java.util.Random;
+
+/**
+ * Scanner가 숫자 리터럴을 문자열 없이 변환한 값이 Double.parseDouble()과 비트 단위로 같은지 확인한다.
+ * 정수 2^53 근처, 소수부 22자리 근처, 빠른 경로를 쓰지 못하는 긴 가수를 먼저 확인하고, 무작위 리터럴을 확인한다.
+ * 다른 값이 하나라도 나오면 예외를 던진다.
+ * 사용법: java -cp out com.binn328.lox.NumberParsingCheck [무작위 리터럴 수] [seed]
+ */
+public class NumberParsingCheck {
+    private static final LoxSession session = new LoxSession();
+    private static int checked = 0;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+
+        boundaries();
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) check(randomLiteral(random));
+
+        System.out.println(checked + " literals match Double.parseDouble (seed " + seed + ")");
+    }
+
+    private static void boundaries() {
+        // 가수가 2^53 이하면 빠른 경로, 넘으면 일반 경로를 탄다.
+        long limit = 1L << 53;
+        for (long mantissa = limit - 3; mantissa <= limit + 3; mantissa++) {
+            String digits = Long.toString(mantissa);
+            check(digits);
+            for (int point = 1; point < digits.length(); point++) {
+                check(digits.substring(0, point) + "." + digits.substring(point));
+            }
+        }
+
+        // 소수부가 22자리면 빠른 경로, 23자리부터는 일반 경로를 탄다.
+        for (int fraction = 20; fraction <= 24; fraction++) {
+            check("0." + "0".repeat(fraction - 1) + "1");
+            check("1." + "0".repeat(fraction - 1) + "1");
+            check("0." + "1".repeat(fraction));
+            check("0." + "9".repeat(fraction));
+        }
+
+        // 가수가 long의 범위도 넘는 긴 리터럴
+        check("9".repeat(19));
+        check("9".repeat(20));
+        check("1" + "0".repeat(30));
+        check("123456789012345678901234567890.123456789");
+        check("0." + "3".repeat(40));
+        check("1.00000000000000011102230246251565404236316680908203125");
+        check("0." + "0".repeat(30) + "1");
+        check("0");
+        check("0.0");
+        check("00012.500");
+    }
+
+    private static String randomLiteral(Random random) {
+        StringBuilder literal = new StringBuilder();
+        // 빠른 경로와 일반 경로가 모두 자주 나오도록 자릿수를 고른다.
+        int integerDigits = 1 + random.nextInt(random.nextBoolean() ? 8 : 24);
+        for (int i = 0; i < integerDigits; i++) literal.append((char) ('0' + random.nextInt(10)));
+
+        if (random.nextInt(4) != 0) {
+            int fractionDigits = 1 + random.nextInt(random.nextBoolean() ? 8 : 28);
+            literal.append('.');
+            for (int i = 0; i < fractionDigits; i++) literal.append((char) ('0' + random.nextInt(10)));
+        }
+        return literal.toString();
+    }
+
+    private static void check(String literal) {
+        TokenBuffer tokens = new Scanner(session, literal).scanBuffer();
+        if (tokens.count != 2 || tokens.types[0] != TokenType.NUMBER.ordinal()) {
+            throw new IllegalStateException(literal + " did not scan as one number");
+        }
+
+        double expected = Double.parseDouble(literal);
+        double actual = tokens.numbers[0];
+        if (Double.doubleToRawLongBits(expected) != Double.doubleToRawLongBits(actual)) {
+            throw new IllegalStateException(literal + " scanned as " + actual + ", expected " + expected);
+        }
+        checked++;
+    }
+}
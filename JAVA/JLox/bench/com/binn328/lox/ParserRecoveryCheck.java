@@ -0,0 +1,80 @@
+package com.binn328.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 구문 에러가 난 뒤 파서가 식의 경계에서 다시 시작하여 나머지 에러도 보고하는지 확인한다.
+ * 입력마다 Expr 트리, ExprArena, 스트리밍 파서로 파싱하고, 세션에 쌓인 Diagnostic이 기대한 목록과 같은지 비교한다.
+ * 다른 결과가 하나라도 나오면 예외를 던진다.
+ * 사용법: java -cp out com.binn328.lox.ParserRecoveryCheck
+ */
+public class ParserRecoveryCheck {
+    /**
+     * 입력과 보고되어야 하는 에러들
+     */
+    private static final String[][] CASES = {
+            {"1 + * 2 - / 3",
+                    "[line 1] Error at '*': Expect expression.",
+                    "[line 1] Error at '/': Expect expression."},
+            {"(1 +) * (2 * )",
+                    "[line 1] Error at ')': Expect expression.",
+                    "[line 1] Error at ')': Expect expression."},
+            {"(1 2) + (3 4)",
+                    "[line 1] Error at '2': Expect ')' after expression.",
+                    "[line 1] Error at '4': Expect ')' after expression."},
+            {"(1 +) (2 +)",
+                    "[line 1] Error at ')': Expect expression.",
+                    "[line 1] Error at ')': Expect expression."},
+            {"(1 +) * (2 * ) +\n3 + * 4",
+                    "[line 1] Error at ')': Expect expression.",
+                    "[line 1] Error at ')': Expect expression.",
+                    "[line 2] Error at '*': Expect expression."},
+            {"1 + (2 * 3) - -(4 / )",
+                    "[line 1] Error at ')': Expect expression."},
+            {"1 +",
+                    "[line 1] Error at end: Expect expression."},
+            {"1 + 2 * (3 - 4)"},
+    };
+
+    public static void main(String[] args) {
+        for (String[] testCase : CASES) {
+            String source = testCase[0];
+            List<String> expected = List.of(testCase).subList(1, testCase.length);
+
+            LoxSession session = session();
+            new Parser(session, new Scanner(session, source).scanBuffer()).parse();
+            check(source, "parse", expected, session);
+
+            session = session();
+            new Parser(session, new Scanner(session, source).scanBuffer()).parseArena();
+            check(source, "parseArena", expected, session);
+
+            session = session();
+            new Parser(session, new Scanner(session, new StringReader(source))).parse();
+            check(source, "stream", expected, session);
+        }
+
+        System.out.println(CASES.length + " inputs report the expected diagnostics");
+    }
+
+    /**
+     * 에러 출력은 버리고 diagnostics만 모으는 세션
+     */
+    private static LoxSession session() {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        return new LoxSession(discard, discard);
+    }
+
+    private static void check(String source, String mode, List<String> expected, LoxSession session) {
+        List<String> actual = new ArrayList<>();
+        for (Diagnostic diagnostic : session.diagnostics) actual.add(diagnostic.toString());
+
+        if (!actual.equals(expected)) {
+            throw new IllegalStateException(mode + " of \"" + source + "\" reported " + actual + ", expected " + expected);
+        }
+    }
+}
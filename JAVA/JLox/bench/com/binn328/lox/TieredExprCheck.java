@@ -0,0 +1,87 @@
+package com.binn328.lox;
+
+import java.util.Objects;
+
+/**
+ * TieredExpr가 문턱값만큼 평가한 뒤에 Jit으로 컴파일한 코드로 넘어가는지 확인한다.
+ * 문턱값까지는 컴파일하지 않고, 그 다음 평가부터 isCompiled()가 true여야 하며,
+ * 어느 쪽으로 평가해도 결과와 에러는 Interpreter와 같아야 한다.
+ * 너무 커서 컴파일하지 못하는 식은 계속 Interpreter로 평가한다.
+ * 다른 결과가 하나라도 나오면 예외를 던진다.
+ * 사용법: java -cp out com.binn328.lox.TieredExprCheck
+ */
+public class TieredExprCheck {
+    private static final int THRESHOLD = 50;
+
+    private static final String[] SOURCES = {
+            "1 + 2 * 3",
+            "-(1 + 2) == 3",
+            "\"a\" + \"b\" == \"ab\"",
+            "!(1 >= 2) != false",
+            "1 - \"a\" * nil",
+            Corpus.arithmetic(8),
+    };
+
+    public static void main(String[] args) {
+        for (String source : SOURCES) {
+            check(source, true);
+        }
+        // 코드가 메소드 하나의 크기 제한을 넘으므로 컴파일하지 못한다.
+        check(Corpus.wide(20_000), false);
+
+        System.out.println((SOURCES.length + 1) + " expressions tier up as expected");
+    }
+
+    private static void check(String source, boolean compilable) {
+        LoxSession session = new LoxSession();
+        Expr expression = new Parser(session, new Scanner(session, source).scanBuffer()).parse();
+        if (expression == null) throw new IllegalStateException("Could not parse " + abbreviate(source));
+
+        Interpreter interpreter = new Interpreter(session);
+        TieredExpr tiered = new TieredExpr(expression, THRESHOLD);
+        for (int i = 0; i < THRESHOLD; i++) {
+            compare(source, interpreter, expression, tiered);
+            expect(source, "compiled before the threshold", !tiered.isCompiled());
+        }
+
+        compare(source, interpreter, expression, tiered);
+        expect(source, compilable ? "not compiled after the threshold" : "compiled a too large expression",
+                tiered.isCompiled() == compilable);
+        compare(source, interpreter, expression, tiered);
+    }
+
+    private static void compare(String source, Interpreter interpreter, Expr expression, TieredExpr tiered) {
+        Object expected = null;
+        Object actual = null;
+        RuntimeError expectedError = null;
+        RuntimeError actualError = null;
+        try {
+            expected = interpreter.evaluate(expression);
+        } catch (RuntimeError error) {
+            expectedError = error;
+        }
+        try {
+            actual = tiered.evaluate(interpreter);
+        } catch (RuntimeError error) {
+            actualError = error;
+        }
+
+        boolean same;
+        if (expectedError != null) {
+            same = actualError != null && actualError.token == expectedError.token
+                    && actualError.getMessage().equals(expectedError.getMessage());
+        } else {
+            same = actualError == null && Objects.equals(expected, actual);
+        }
+        expect(source, "result " + (actualError != null ? actualError.getMessage() : actual)
+                + (tiered.isCompiled() ? " from compiled code" : " from the interpreter"), same);
+    }
+
+    private static void expect(String source, String what, boolean condition) {
+        if (!condition) throw new IllegalStateException(abbreviate(source) + ": unexpected " + what);
+    }
+
+    private static String abbreviate(String source) {
+        return source.length() <= 60 ? source : source.substring(0, 57) + "...";
+    }
+}
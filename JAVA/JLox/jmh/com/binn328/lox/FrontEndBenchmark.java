@@ -0,0 +1,78 @@
+package com.binn328.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanner.scanBuffer(), Parser.parse(), Parser.parseArena(), AstPrinter.print()를 여러 모양과 크기의 소스로 측정한다.
+ * 사용법: mvn -Pjmh test-compile exec:exec -Djmh.args="FrontEndBenchmark -prof gc"
+ * 반복마다 새 LoxSession을 만들어, 앞선 반복이 채워둔 심볼 테이블 덕에 스캔이 빨라 보이지 않게 한다.
+ * JMH를 받을 수 없으면 bench 폴더의 FrontEndLoopBenchmark로 같은 측정을 할 수 있다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrontEndBenchmark {
+    /**
+     * 소스의 모양과 크기. Corpus의 메소드 이름과 인자이다.
+     */
+    @Param({"deep/100", "deep/1000", "deep/10000", "wide/1000", "wide/10000",
+            "strings/1000", "strings/10000", "numbers/1000", "numbers/10000"})
+    public String corpus;
+
+    private String source;
+    private TokenBuffer tokens;
+    private Expr expr;
+    private final AstPrinter printer = new AstPrinter();
+
+    @Setup
+    public void setup() {
+        String[] parts = corpus.split("/");
+        int size = Integer.parseInt(parts[1]);
+        switch (parts[0]) {
+            case "deep": source = Corpus.deep(size); break;
+            case "wide": source = Corpus.wide(size); break;
+            case "strings": source = Corpus.strings(size); break;
+            case "numbers": source = Corpus.numbers(size); break;
+            default: throw new IllegalArgumentException("Unknown corpus: " + corpus);
+        }
+
+        LoxSession session = new LoxSession();
+        tokens = new Scanner(session, source).scanBuffer();
+        expr = new Parser(session, tokens).parse();
+    }
+
+    @Benchmark
+    public TokenBuffer scan() {
+        return new Scanner(new LoxSession(), source).scanBuffer();
+    }
+
+    @Benchmark
+    public Expr parse() {
+        return new Parser(new LoxSession(), tokens).parse();
+    }
+
+    @Benchmark
+    public ExprArena parseArena() {
+        return new Parser(new LoxSession(), tokens).parseArena();
+    }
+
+    @Benchmark
+    public String print() {
+        return printer.print(expr);
+    }
+}
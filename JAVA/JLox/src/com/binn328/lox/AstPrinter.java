@@ -1,42 +1,227 @@
 package com.binn328.lox;
 
-public class AstPrinter implements Expr.Visitor<String> {
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * 구문 트리를 괄호로 묶은 전위 표기로 출력한다.
+ * 노드마다 문자열을 만들어 이어 붙이지 않고, 하나의 Appendable에 차례로 써 넣는다.
+ * 자식 노드는 재귀 호출하지 않고 작업 스택에 넣어두므로 트리가 아무리 깊어도 호출 스택이 넘치지 않는다.
+ */
+public class AstPrinter implements Expr.Visitor<Void>, ExprArena.Visitor<Void> {
+    /**
+     * 아레나 작업 스택에서 노드 인덱스 대신 넣는 문자열 표시
+     */
+    private static final int CLOSE = -1;
+    private static final int SPACE = -2;
+
+    private Appendable out;
+    /**
+     * 출력 중인 아레나. Expr 트리를 출력할 때는 null이다.
+     */
+    private ExprArena arena;
+    /**
+     * Expr 트리에서 아직 출력하지 않은 노드(Expr)와 문자열(String). 위에 있는 것부터 출력한다.
+     */
+    private final Deque<Object> pending = new ArrayDeque<>();
+    /**
+     * 아레나에서 아직 출력하지 않은 노드 인덱스와 문자열 표시(CLOSE, SPACE). 인덱스를 박싱하지 않도록 int 배열에 쌓는다.
+     */
+    private int[] arenaPending = new int[16];
+    private int arenaSize = 0;
+
     String print(Expr expr) {
-        return expr.accept(this);
+        StringBuilder builder = new StringBuilder();
+        print(expr, builder);
+        return builder.toString();
+    }
+
+    /**
+     * 구문 트리를 out에 바로 써 넣는다.
+     * Writer를 넘기면 트리 전체를 문자열로 만들지 않고 화면이나 파일로 흘려보낸다.
+     * @param expr
+     * @param out
+     */
+    void print(Expr expr, Appendable out) {
+        this.out = out;
+        pending.clear();
+        pending.push(expr);
+        drain();
+    }
+
+    String print(ExprArena arena) {
+        StringBuilder builder = new StringBuilder();
+        print(arena, builder);
+        return builder.toString();
+    }
+
+    /**
+     * 아레나에 담긴 구문 트리를 out에 바로 써 넣는다. 출력은 같은 식의 Expr 트리와 같다.
+     * @param arena
+     * @param out
+     */
+    void print(ExprArena arena, Appendable out) {
+        this.arena = arena;
+        this.out = out;
+        arenaSize = 0;
+        push(arena.root());
+        try {
+            while (arenaSize > 0) {
+                int item = arenaPending[--arenaSize];
+                if (item == CLOSE) {
+                    append(")");
+                } else if (item == SPACE) {
+                    append(" ");
+                } else {
+                    arena.accept(item, this);
+                }
+            }
+        } finally {
+            this.arena = null;
+        }
+    }
+
+    /**
+     * 작업 스택이 빌 때까지 위에서부터 꺼내 출력한다.
+     */
+    private void drain() {
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof String) {
+                append((String) item);
+            } else {
+                ((Expr) item).accept(this);
+            }
+        }
     }
 
     @Override
-    public String visitBinaryExpr(Expr.Binary expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        parenthesize(expr.operator.lexeme(), expr.left, expr.right);
+        return null;
     }
 
     @Override
-    public String visitGroupingExpr(Expr.Grouping expr) {
-        return parenthesize("group", expr.expression);
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        parenthesize("group", expr.expression);
+        return null;
     }
 
     @Override
-    public String visitLiteralExpr(Expr.Literal expr) {
-        if (expr.value == null) return "nil";
-        return expr.value.toString();
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            append("nil");
+        } else {
+            append(expr.value.toString());
+        }
+        return null;
     }
 
     @Override
-    public String visitUnaryExpr(Expr.Unary expr) {
-        return parenthesize(expr.operator.lexeme, expr.right);
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        parenthesize(expr.operator.lexeme(), expr.right);
+        return null;
     }
 
-    private String parenthesize(String name, Expr... exprs) {
-        StringBuilder builder = new StringBuilder();
+    @Override
+    public Void visitBinaryExpr(int expr) {
+        parenthesize(lexeme(arena.binaryOperator(expr)), arena.binaryLeft(expr), arena.binaryRight(expr));
+        return null;
+    }
 
-        builder.append("(").append(name);
-        for (Expr expr : exprs) {
-            builder.append(" ");
-            builder.append(expr.accept(this));
+    @Override
+    public Void visitGroupingExpr(int expr) {
+        parenthesize("group", arena.groupingExpression(expr));
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(int expr) {
+        switch (arena.literalTag(expr)) {
+            case ExprArena.NUMBER:
+                append(Double.toString(arena.literalNumber(expr)));
+                break;
+            case ExprArena.STRING:
+                append(arena.literalString(expr));
+                break;
+            case ExprArena.TRUE:
+                append("true");
+                break;
+            case ExprArena.FALSE:
+                append("false");
+                break;
+            case ExprArena.COLUMN:
+                append("column " + arena.literalRef(expr));
+                break;
+            default:
+                append("nil");
         }
-        builder.append(")");
+        return null;
+    }
 
-        return builder.toString();
+    @Override
+    public Void visitUnaryExpr(int expr) {
+        parenthesize(lexeme(arena.unaryOperator(expr)), arena.unaryRight(expr));
+        return null;
+    }
+
+    private String lexeme(int token) {
+        return arena.tokens.token(token).lexeme();
+    }
+
+    /**
+     * 여는 괄호와 이름은 바로 쓰고, 나머지는 출력할 순서의 반대로 작업 스택에 넣는다.
+     */
+    private void parenthesize(String name, Expr expr) {
+        append("(");
+        append(name);
+        append(" ");
+        pending.push(")");
+        pending.push(expr);
+    }
+
+    private void parenthesize(String name, Expr left, Expr right) {
+        append("(");
+        append(name);
+        append(" ");
+        pending.push(")");
+        pending.push(right);
+        pending.push(" ");
+        pending.push(left);
+    }
+
+    private void parenthesize(String name, int expr) {
+        append("(");
+        append(name);
+        append(" ");
+        push(CLOSE);
+        push(expr);
+    }
+
+    private void parenthesize(String name, int left, int right) {
+        append("(");
+        append(name);
+        append(" ");
+        push(CLOSE);
+        push(right);
+        push(SPACE);
+        push(left);
+    }
+
+    private void push(int item) {
+        if (arenaSize == arenaPending.length) arenaPending = Arrays.copyOf(arenaPending, arenaSize * 2);
+        arenaPending[arenaSize++] = item;
+    }
+
+    private void append(String text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public static void main(String[] args) {
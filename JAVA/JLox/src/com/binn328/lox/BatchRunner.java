@@ -0,0 +1,145 @@
+package com.binn328.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 여러 스크립트 파일을 work-stealing 스레드 풀에서 동시에 실행한다.
+ * 파일마다 따로 세션을 만들어 에러 상태와 출력을 분리하고,
+ * 결과는 입력 순서대로 모아서 돌려준다.
+ */
+class BatchRunner {
+    /**
+     * 스크립트 파일 하나의 실행 결과
+     */
+    static class Result {
+        final Path path;
+        /**
+         * 실행 결과로 출력된 내용
+         */
+        final String output;
+        /**
+         * 에러 메시지
+         */
+        final String diagnostics;
+        final int exitCode;
+
+        Result(Path path, String output, String diagnostics, int exitCode) {
+            this.path = path;
+            this.output = output;
+            this.diagnostics = diagnostics;
+            this.exitCode = exitCode;
+        }
+    }
+
+    /**
+     * 명령줄 인자를 실행할 파일 목록으로 바꾼다.
+     * 디렉터리가 주어지면 그 아래의 .lox 파일을 경로 순으로 모두 넣는다.
+     * @param args 파일이나 디렉터리 경로
+     * @return
+     * @throws IOException
+     */
+    static List<Path> collect(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files.addAll(walk
+                            .filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".lox"))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 파일들을 동시에 실행하고, 입력과 같은 순서로 결과를 반환한다.
+     * 실행 중에 예외가 난 파일은 종료코드 70으로 실패한 결과로 남기고, 나머지 파일의 결과는 계속 모은다.
+     * @param files
+     * @return
+     */
+    static List<Result> run(List<Path> files) {
+        ExecutorService pool = Executors.newWorkStealingPool();
+        try {
+            List<Future<Result>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(pool.submit(() -> runFile(file)));
+            }
+
+            List<Result> results = new ArrayList<>(files.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Path file = files.get(i);
+                    results.add(new Result(file, "", "Failed to run " + file + ": " + e.getCause() + System.lineSeparator(), 70));
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch run was interrupted.", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 파일들을 실행하고 결과를 순서대로 화면에 출력한다.
+     * 실행 결과는 표준 출력에, 에러 메시지는 파일 하나를 실행할 때와 같이 표준 에러에 쓴다.
+     * @param files
+     * @return 가장 심각한 결과의 종료코드
+     */
+    static int runAndReport(List<Path> files) {
+        int exitCode = 0;
+        for (Result result : run(files)) {
+            System.out.println("== " + result.path + (result.exitCode == 0 ? "" : " (exit " + result.exitCode + ")"));
+            System.out.print(result.output);
+            System.out.flush();
+            System.err.print(result.diagnostics);
+            System.err.flush();
+            exitCode = Math.max(exitCode, result.exitCode);
+        }
+        return exitCode;
+    }
+
+    /**
+     * 파일 하나를 새 세션에서 실행한다.
+     * @param file
+     * @return
+     */
+    private static Result runFile(Path file) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Charset charset = Charset.defaultCharset();
+        LoxSession session = new LoxSession(new PrintStream(out, true, charset), new PrintStream(err, true, charset));
+
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            Lox.run(session, new String(bytes, charset));
+        } catch (IOException e) {
+            session.err.println("Could not read " + file + ": " + e.getMessage());
+            return new Result(file, out.toString(charset), err.toString(charset), 66);
+        }
+
+        return new Result(file, out.toString(charset), err.toString(charset), Lox.exitCode(session));
+    }
+}
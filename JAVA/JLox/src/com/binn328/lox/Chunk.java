@@ -0,0 +1,107 @@
+package com.binn328.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 바이트코드 명령어 스트림과 상수 풀을 담는다.
+ */
+class Chunk {
+    /**
+     * 명령어 스트림
+     */
+    byte[] code = new byte[64];
+    /**
+     * 명령어 스트림에 기록된 바이트 수
+     */
+    int count = 0;
+    /**
+     * 각 바이트의 줄 번호를 clox처럼 런 길이로 부호화한 배열.
+     * lines[2k]는 줄 번호, lines[2k+1]은 그 줄에서 연달아 기록된 바이트 수이다.
+     * 실행 중 에러가 나면 위치를 알려주기 위해 사용한다.
+     */
+    private int[] lines = new int[8];
+    /**
+     * lines에 쓰인 칸 수
+     */
+    private int lineCount = 0;
+    /**
+     * 상수 풀
+     */
+    final List<Object> constants = new ArrayList<>();
+    /**
+     * 실행에 필요한 최대 스택 깊이
+     */
+    int maxStack = 0;
+    /**
+     * 같은 상수를 한 번만 저장하기 위해 사용하는 맵
+     */
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+    /**
+     * 명령어 스트림에 바이트를 하나 덧붙인다.
+     * @param b
+     * @param line 이 바이트를 만든 토큰의 줄 번호
+     */
+    void write(byte b, int line) {
+        if (lineCount > 0 && lines[lineCount - 2] == line) {
+            lines[lineCount - 1]++;
+        } else {
+            if (lineCount == lines.length) lines = Arrays.copyOf(lines, lineCount * 2);
+            lines[lineCount++] = line;
+            lines[lineCount++] = 1;
+        }
+        append(b);
+    }
+
+    /**
+     * 에러를 내지 않는 바이트를 덧붙인다. 줄 번호는 바로 앞 바이트의 것을 이어 쓴다.
+     * @param b
+     */
+    void write(byte b) {
+        if (lineCount == 0) {
+            write(b, 0);
+            return;
+        }
+        lines[lineCount - 1]++;
+        append(b);
+    }
+
+    private void append(byte b) {
+        if (count == code.length) code = Arrays.copyOf(code, count * 2);
+        code[count++] = b;
+    }
+
+    /**
+     * offset 위치의 바이트를 만든 토큰의 줄 번호를 반환한다.
+     * 에러가 날 때만 부르므로 런을 처음부터 따라간다.
+     * @param offset
+     * @return
+     */
+    int line(int offset) {
+        int end = 0;
+        for (int i = 0; i < lineCount; i += 2) {
+            end += lines[i + 1];
+            if (offset < end) return lines[i];
+        }
+        throw new IndexOutOfBoundsException(offset);
+    }
+
+    /**
+     * 상수 풀에 값을 추가하고 그 인덱스를 반환한다.
+     * 이미 들어있는 값이면 기존 인덱스를 반환한다.
+     * @param value
+     * @return
+     */
+    int addConstant(Object value) {
+        Integer index = constantIndexes.get(value);
+        if (index != null) return index;
+
+        constants.add(value);
+        constantIndexes.put(value, constants.size() - 1);
+        return constants.size() - 1;
+    }
+}
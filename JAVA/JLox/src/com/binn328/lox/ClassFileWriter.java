@@ -0,0 +1,313 @@
+package com.binn328.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jit이 만든 바이트코드를 JVM 클래스 파일 형식으로 써주는 최소한의 클래스 파일 작성기
+ * 상수 풀과 필드, 메소드, Code 속성만 지원한다.
+ * 분기가 없는 코드만 쓰므로 StackMapTable 속성은 만들지 않는다.
+ */
+class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 1;
+    static final int ICONST_0 = 3;
+    static final int ICONST_1 = 4;
+    static final int DCONST_0 = 14;
+    static final int DCONST_1 = 15;
+    static final int LDC = 18;
+    static final int LDC_W = 19;
+    static final int LDC2_W = 20;
+    static final int ALOAD_0 = 42;
+    static final int POP = 87;
+    static final int POP2 = 88;
+    static final int DADD = 99;
+    static final int DSUB = 103;
+    static final int DMUL = 107;
+    static final int DDIV = 111;
+    static final int DNEG = 119;
+    static final int IXOR = 130;
+    static final int ARETURN = 176;
+    static final int RETURN = 177;
+    static final int GETSTATIC = 178;
+    static final int PUTSTATIC = 179;
+    static final int INVOKEVIRTUAL = 182;
+    static final int INVOKESPECIAL = 183;
+    static final int INVOKESTATIC = 184;
+    static final int ATHROW = 191;
+    static final int CHECKCAST = 192;
+
+    /**
+     * Java 17 클래스 파일 버전
+     */
+    private static final int MAJOR_VERSION = 61;
+    /**
+     * 메소드 하나의 코드가 넘을 수 없는 바이트 수
+     */
+    static final int MAX_CODE_SIZE = 65535;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * 메소드 하나의 바이트코드. 명령을 쓸 때마다 피연산자 스택의 깊이를 따라가며 최대 깊이를 기록한다.
+     */
+    static class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int stack = 0;
+        private int maxStack = 0;
+
+        /**
+         * 피연산자가 없는 명령을 쓴다.
+         * @param opcode
+         * @param delta 명령이 스택을 늘리는 칸 수. double은 두 칸이다.
+         */
+        void op(int opcode, int delta) {
+            bytes.write(opcode);
+            stack(delta);
+        }
+
+        /**
+         * 상수 풀 번호를 피연산자로 받는 명령을 쓴다.
+         * @param opcode
+         * @param index
+         * @param delta
+         */
+        void op(int opcode, int index, int delta) {
+            bytes.write(opcode);
+            bytes.write(index >> 8);
+            bytes.write(index);
+            stack(delta);
+        }
+
+        /**
+         * 상수 풀 번호에 따라 LDC나 LDC_W를 쓴다. 한 칸짜리 상수만 쓸 수 있다.
+         * @param index
+         */
+        void ldc(int index) {
+            if (index < 256) {
+                bytes.write(LDC);
+                bytes.write(index);
+                stack(1);
+            } else {
+                op(LDC_W, index, 1);
+            }
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        int maxStack() {
+            return maxStack;
+        }
+
+        private void stack(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+    }
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private int fieldCount = 0;
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int methodCount = 0;
+
+    /**
+     * @param name 클래스의 내부 이름. 예: com/binn328/lox/Foo
+     * @param superName
+     * @param interfaceNames
+     */
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        for (String interfaceName : interfaceNames) interfaces.add(classRef(interfaceName));
+    }
+
+    int utf8(String text) {
+        return constant("U" + text, 1, out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(text);
+        });
+    }
+
+    int classRef(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, 1, out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    int string(String text) {
+        int textIndex = utf8(text);
+        return constant("S" + text, 1, out -> {
+            out.writeByte(CONSTANT_STRING);
+            out.writeShort(textIndex);
+        });
+    }
+
+    /**
+     * double 상수. 상수 풀에서 두 칸을 차지하며 LDC2_W로 읽는다.
+     * @param value
+     * @return
+     */
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, 2, out -> {
+            out.writeByte(CONSTANT_DOUBLE);
+            out.writeLong(bits);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    void field(int access, String name, String descriptor) {
+        DataOutputStream out = new DataOutputStream(fields);
+        write(() -> {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        });
+        fieldCount++;
+    }
+
+    /**
+     * Code 속성을 가진 메소드를 추가한다.
+     * @param access
+     * @param name
+     * @param descriptor
+     * @param code
+     * @param maxLocals
+     */
+    void method(int access, String name, String descriptor, Code code, int maxLocals) {
+        if (code.size() > MAX_CODE_SIZE) throw new IllegalArgumentException("Method " + name + " is too large.");
+
+        int codeAttribute = utf8("Code");
+        DataOutputStream out = new DataOutputStream(methods);
+        write(() -> {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+
+            out.writeShort(codeAttribute);
+            out.writeInt(2 + 2 + 4 + code.size() + 2 + 2);
+            out.writeShort(code.maxStack());
+            out.writeShort(maxLocals);
+            out.writeInt(code.size());
+            code.bytes.writeTo(out);
+            out.writeShort(0);
+            out.writeShort(0);
+        });
+        methodCount++;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        write(() -> {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int index : interfaces) out.writeShort(index);
+            out.writeShort(fieldCount);
+            fields.writeTo(out);
+            out.writeShort(methodCount);
+            methods.writeTo(out);
+            out.writeShort(0);
+        });
+        return bytes.toByteArray();
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + " " + descriptor, 1, out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + "." + name + " " + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Block {
+        void write() throws IOException;
+    }
+
+    /**
+     * 상수 풀에 항목을 추가하고 번호를 반환한다. 같은 항목이 이미 있으면 그 번호를 반환한다.
+     * @param key 항목을 구분하는 문자열
+     * @param slots 항목이 차지하는 칸 수
+     * @param entry
+     * @return
+     */
+    private int constant(String key, int slots, Entry entry) {
+        Integer index = poolIndexes.get(key);
+        if (index != null) return index;
+
+        if (poolCount + slots > 0xFFFF) throw new IllegalArgumentException("Constant pool is too large.");
+        write(() -> entry.write(poolOut));
+        int added = poolCount;
+        poolCount += slots;
+        poolIndexes.put(key, added);
+        return added;
+    }
+
+    /**
+     * 메모리에만 쓰므로 IOException이 나지 않지만, 시그니처를 맞추기 위해 감싼다.
+     */
+    private static void write(Block block) {
+        try {
+            block.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
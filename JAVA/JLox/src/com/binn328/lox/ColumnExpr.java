@@ -0,0 +1,551 @@
+package com.binn328.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 식 하나를 여러 행에 한꺼번에 평가한다. 식을 한 번 컴파일해 두고 Columns의 열을 입력으로 받아 결과 열을 만든다.
+ * 식 안의 식별자는 같은 이름의 열을 가리킨다. (Parser.withColumns)
+ *
+ * 열마다 타입이 정해져 있으므로 모든 노드의 타입을 컴파일할 때 알 수 있다.
+ * 열을 참조하지 않는 부분식은 컴파일할 때 Interpreter로 미리 계산하고, 나머지 연산자는 명령 하나씩으로 바꾼다.
+ * 평가할 때는 행을 BLOCK_SIZE개씩 나누어 명령마다 블록 전체를 도는 루프를 하나씩 실행하므로,
+ * 분기는 명령마다 한 번이고 루프 안에서는 박싱이나 타입 검사를 하지 않는다.
+ * 루프는 같은 인덱스의 배열 원소끼리 계산하는 모양이라 C2가 SIMD 명령으로 자동 벡터화할 수 있다.
+ *
+ * 결과와 에러는 행마다 Interpreter로 평가한 것과 같다. 타입이 맞지 않는 식은 모든 행에서 같은 에러를 내므로,
+ * 행이 하나라도 있으면 첫 행에서 날 RuntimeError를 던진다.
+ * 컴파일한 식은 여러 스레드에서 함께 써도 된다.
+ */
+class ColumnExpr {
+    /**
+     * 명령 하나가 한 번에 처리하는 행 수. 블록마다 만드는 임시 값이 CPU 캐시에 남을 만큼 작게 잡는다.
+     */
+    static final int BLOCK_SIZE = 1024;
+
+    /**
+     * 식 안의 열 참조. Parser가 Literal 노드의 값으로 넣는다.
+     */
+    static final class Column {
+        final int index;
+
+        Column(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return "column " + index;
+        }
+    }
+
+    private static final byte NUMBER = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte STRING = 2;
+    private static final byte NIL = 3;
+
+    private static final byte NEGATE = 0;
+    private static final byte NOT = 1;
+    private static final byte ADD = 2;
+    private static final byte SUBTRACT = 3;
+    private static final byte MULTIPLY = 4;
+    private static final byte DIVIDE = 5;
+    private static final byte GREATER = 6;
+    private static final byte GREATER_EQUAL = 7;
+    private static final byte LESS = 8;
+    private static final byte LESS_EQUAL = 9;
+    private static final byte NUMBER_EQUAL = 10;
+    private static final byte BOOLEAN_EQUAL = 11;
+    private static final byte STRING_EQUAL = 12;
+    private static final byte CONCAT = 13;
+
+    private final List<String> names;
+    private final byte[] columnTypes;
+
+    /**
+     * 명령. 슬롯 번호로 피연산자와 결과를 가리키고, 단항 연산자의 rights는 -1이다.
+     */
+    private byte[] ops = new byte[16];
+    private int[] lefts = new int[16];
+    private int[] rights = new int[16];
+    private int[] outs = new int[16];
+    private int count = 0;
+
+    /**
+     * 슬롯마다 값의 타입. 0부터 열 수 미만까지는 입력 열이고, 그 뒤는 상수와 임시 값이다.
+     */
+    private byte[] slotTypes = new byte[16];
+    /**
+     * 상수 슬롯에 채울 값. 임시 값 슬롯은 null이다.
+     */
+    private Object[] slotConstants = new Object[16];
+    private int slotCount;
+    /**
+     * 다 쓰고 다시 쓸 수 있는 임시 값 슬롯
+     */
+    private final List<Integer> freeSlots = new ArrayList<>();
+
+    /**
+     * 컴파일하는 동안 피연산자 스택. 슬롯이 -1이면 상수이다.
+     */
+    private byte[] stackTypes = new byte[16];
+    private int[] stackSlots = new int[16];
+    private Object[] stackConstants = new Object[16];
+    private int sp = 0;
+
+    /**
+     * 열을 참조하지 않는 부분식을 미리 계산할 인터프리터
+     */
+    private final Interpreter interpreter = new Interpreter(new LoxSession());
+
+    private byte resultType;
+    /**
+     * 결과가 담긴 슬롯. 결과가 상수면 -1이다.
+     */
+    private int resultSlot;
+    private Object resultConstant;
+    private Token errorToken = null;
+    private String errorMessage = null;
+
+    private ColumnExpr(Columns schema) {
+        this.names = new ArrayList<>(schema.names());
+        this.columnTypes = new byte[schema.size()];
+        for (int i = 0; i < columnTypes.length; i++) columnTypes[i] = typeOf(schema.column(i));
+        for (int i = 0; i < columnTypes.length; i++) slot(columnTypes[i], null);
+    }
+
+    /**
+     * 소스 코드를 파싱하여 컴파일한다. 식별자는 schema의 열 이름이어야 한다.
+     * @param session 구문 에러를 보고할 세션
+     * @param source
+     * @param schema 평가할 때 넘길 열과 이름, 타입이 같은 입력. 값은 쓰지 않는다.
+     * @return 구문 에러가 있으면 null
+     */
+    static ColumnExpr compile(LoxSession session, CharSequence source, Columns schema) {
+        Expr expression = new Parser(session, new Scanner(session, source).scanBuffer())
+                .withColumns(schema.names())
+                .parse();
+        if (session.hadError) return null;
+        return compile(expression, schema);
+    }
+
+    /**
+     * Parser.withColumns()로 파싱한 식을 컴파일한다.
+     * @param expression
+     * @param schema
+     * @return
+     */
+    static ColumnExpr compile(Expr expression, Columns schema) {
+        ColumnExpr compiled = new ColumnExpr(schema);
+        compiled.generate(expression);
+        return compiled;
+    }
+
+    /**
+     * 모든 행에 식을 평가한다.
+     * @param columns 컴파일할 때 준 것과 이름과 타입이 같은 열
+     * @return 결과 타입에 따라 double[], boolean[], String[], 결과가 nil이면 Object[]. 길이는 행 수이다.
+     */
+    Object evaluate(Columns columns) {
+        if (!columns.names().equals(names)) {
+            throw new IllegalArgumentException("Columns " + columns.names() + " do not match " + names + ".");
+        }
+        for (int i = 0; i < columnTypes.length; i++) {
+            if (typeOf(columns.column(i)) != columnTypes[i]) {
+                throw new IllegalArgumentException("Column " + names.get(i) + " has a different type.");
+            }
+        }
+
+        int rows = columns.rows();
+        if (errorToken != null) {
+            if (rows > 0) throw new RuntimeError(errorToken, errorMessage);
+            return new Object[0];
+        }
+
+        Object output = newArray(resultType, rows);
+        if (resultSlot < 0) {
+            fill(output, resultConstant, rows);
+            return output;
+        }
+        if (resultSlot < columnTypes.length) {
+            System.arraycopy(columns.column(resultSlot), 0, output, 0, rows);
+            return output;
+        }
+
+        int block = Math.min(BLOCK_SIZE, rows);
+        Object[] slots = new Object[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slot < columnTypes.length) {
+                slots[slot] = columns.column(slot);
+            } else {
+                slots[slot] = newArray(slotTypes[slot], block);
+                if (slotConstants[slot] != null) fill(slots[slot], slotConstants[slot], block);
+            }
+        }
+
+        for (int start = 0; start < rows; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, rows - start);
+            for (int instruction = 0; instruction < count; instruction++) {
+                execute(instruction, slots, start, length);
+            }
+            System.arraycopy(slots[resultSlot], 0, output, start, length);
+        }
+        return output;
+    }
+
+    // 컴파일
+
+    /**
+     * 트리를 후위 순서로 돌며 명령을 만든다. Interpreter와 같은 순서로 돌므로 처음 만나는 타입 에러가 같다.
+     * @param expression
+     */
+    private void generate(Expr expression) {
+        ExprStack pending = new ExprStack();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Expr expr = pending.pop();
+            if (pending.isExit()) {
+                boolean typed = expr.kind == Expr.UNARY ? unary((Expr.Unary) expr) : binary((Expr.Binary) expr);
+                if (!typed) return;
+                continue;
+            }
+
+            switch (expr.kind) {
+                case Expr.LITERAL: {
+                    Object value = ((Expr.Literal) expr).value;
+                    if (value instanceof Column) {
+                        int column = ((Column) value).index;
+                        if (column >= columnTypes.length) throw new IllegalArgumentException("Unknown " + value + ".");
+                        push(columnTypes[column], column, null);
+                    } else {
+                        push(typeOf(value), -1, value);
+                    }
+                    break;
+                }
+                case Expr.GROUPING:
+                    pending.push(((Expr.Grouping) expr).expression);
+                    break;
+                case Expr.UNARY:
+                    pending.pushExit(expr);
+                    pending.push(((Expr.Unary) expr).right);
+                    break;
+                case Expr.BINARY:
+                    pending.pushExit(expr);
+                    pending.push(((Expr.Binary) expr).right);
+                    pending.push(((Expr.Binary) expr).left);
+                    break;
+            }
+        }
+
+        resultType = stackTypes[0];
+        resultSlot = stackSlots[0];
+        resultConstant = stackConstants[0];
+    }
+
+    /**
+     * @return 피연산자의 타입이 맞지 않으면 false
+     */
+    private boolean unary(Expr.Unary expr) {
+        Token operator = expr.operator;
+        int right = --sp;
+        if (stackSlots[right] < 0) {
+            return fold(new Expr.Unary(operator, new Expr.Literal(stackConstants[right])));
+        }
+
+        byte type = stackTypes[right];
+        if (operator.type == TokenType.MINUS) {
+            if (type != NUMBER) return fail(operator, "Operand must be a number.");
+            emit(NEGATE, NUMBER, stackSlots[right], -1);
+        } else if (type == BOOLEAN) {
+            emit(NOT, BOOLEAN, stackSlots[right], -1);
+        } else {
+            // 숫자와 문자열은 모두 참이다.
+            release(stackSlots[right]);
+            push(BOOLEAN, -1, false);
+        }
+        return true;
+    }
+
+    /**
+     * @return 피연산자의 타입이 맞지 않으면 false
+     */
+    private boolean binary(Expr.Binary expr) {
+        Token operator = expr.operator;
+        int right = --sp;
+        int left = --sp;
+        if (stackSlots[left] < 0 && stackSlots[right] < 0) {
+            return fold(new Expr.Binary(new Expr.Literal(stackConstants[left]), operator,
+                    new Expr.Literal(stackConstants[right])));
+        }
+
+        byte leftType = stackTypes[left];
+        byte rightType = stackTypes[right];
+        boolean numbers = leftType == NUMBER && rightType == NUMBER;
+        switch (operator.type) {
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                if (leftType != rightType) {
+                    release(stackSlots[left]);
+                    release(stackSlots[right]);
+                    push(BOOLEAN, -1, operator.type == TokenType.BANG_EQUAL);
+                    return true;
+                }
+                byte equal = leftType == NUMBER ? NUMBER_EQUAL : leftType == BOOLEAN ? BOOLEAN_EQUAL : STRING_EQUAL;
+                emit(equal, BOOLEAN, operand(left), operand(right));
+                if (operator.type == TokenType.BANG_EQUAL) emit(NOT, BOOLEAN, stackSlots[--sp], -1);
+                return true;
+            case PLUS:
+                if (numbers) {
+                    emit(ADD, NUMBER, operand(left), operand(right));
+                } else if (leftType == STRING && rightType == STRING) {
+                    emit(CONCAT, STRING, operand(left), operand(right));
+                } else {
+                    return fail(operator, "Operands must be two numbers or two strings.");
+                }
+                return true;
+        }
+
+        if (!numbers) return fail(operator, "Operands must be numbers.");
+        switch (operator.type) {
+            case MINUS: emit(SUBTRACT, NUMBER, operand(left), operand(right)); break;
+            case STAR: emit(MULTIPLY, NUMBER, operand(left), operand(right)); break;
+            case SLASH: emit(DIVIDE, NUMBER, operand(left), operand(right)); break;
+            case GREATER: emit(GREATER, BOOLEAN, operand(left), operand(right)); break;
+            case GREATER_EQUAL: emit(GREATER_EQUAL, BOOLEAN, operand(left), operand(right)); break;
+            case LESS: emit(LESS, BOOLEAN, operand(left), operand(right)); break;
+            case LESS_EQUAL: emit(LESS_EQUAL, BOOLEAN, operand(left), operand(right)); break;
+        }
+        return true;
+    }
+
+    /**
+     * 상수끼리의 연산을 Interpreter로 계산하여 상수로 넣는다.
+     * @return 계산하다 RuntimeError가 나면 false
+     */
+    private boolean fold(Expr expr) {
+        try {
+            Object value = interpreter.evaluate(expr);
+            push(typeOf(value), -1, value);
+            return true;
+        } catch (RuntimeError error) {
+            return fail(error.token, error.getMessage());
+        }
+    }
+
+    private boolean fail(Token operator, String message) {
+        errorToken = operator;
+        errorMessage = message;
+        return false;
+    }
+
+    /**
+     * 스택의 피연산자가 있는 슬롯을 반환한다. 상수면 블록 길이만큼 채워둘 슬롯을 만든다.
+     */
+    private int operand(int index) {
+        if (stackSlots[index] >= 0) return stackSlots[index];
+        return slot(stackTypes[index], stackConstants[index]);
+    }
+
+    /**
+     * 명령을 하나 추가하고 결과를 스택에 넣는다. 피연산자의 임시 슬롯은 결과 슬롯으로 다시 쓸 수 있다.
+     * 같은 행의 원소만 읽고 쓰므로 결과가 피연산자와 같은 배열이어도 된다.
+     */
+    private void emit(byte op, byte type, int left, int right) {
+        release(left);
+        if (right >= 0) release(right);
+        int out = temporary(type);
+
+        if (count == ops.length) {
+            ops = Arrays.copyOf(ops, count * 2);
+            lefts = Arrays.copyOf(lefts, count * 2);
+            rights = Arrays.copyOf(rights, count * 2);
+            outs = Arrays.copyOf(outs, count * 2);
+        }
+        ops[count] = op;
+        lefts[count] = left;
+        rights[count] = right;
+        outs[count] = out;
+        count++;
+
+        push(type, out, null);
+    }
+
+    private int temporary(byte type) {
+        for (int i = freeSlots.size() - 1; i >= 0; i--) {
+            int slot = freeSlots.get(i);
+            if (slotTypes[slot] == type) {
+                freeSlots.remove(i);
+                return slot;
+            }
+        }
+        return slot(type, null);
+    }
+
+    /**
+     * 다 쓴 임시 슬롯을 돌려놓는다. 입력 열과 상수 슬롯은 그대로 둔다.
+     */
+    private void release(int slot) {
+        if (slot >= columnTypes.length && slotConstants[slot] == null) freeSlots.add(slot);
+    }
+
+    private int slot(byte type, Object constant) {
+        if (slotCount == slotTypes.length) {
+            slotTypes = Arrays.copyOf(slotTypes, slotCount * 2);
+            slotConstants = Arrays.copyOf(slotConstants, slotCount * 2);
+        }
+        slotTypes[slotCount] = type;
+        slotConstants[slotCount] = constant;
+        return slotCount++;
+    }
+
+    private void push(byte type, int slot, Object constant) {
+        if (sp == stackTypes.length) {
+            stackTypes = Arrays.copyOf(stackTypes, sp * 2);
+            stackSlots = Arrays.copyOf(stackSlots, sp * 2);
+            stackConstants = Arrays.copyOf(stackConstants, sp * 2);
+        }
+        stackTypes[sp] = type;
+        stackSlots[sp] = slot;
+        stackConstants[sp] = constant;
+        sp++;
+    }
+
+    private static byte typeOf(Object value) {
+        if (value instanceof Double || value instanceof double[]) return NUMBER;
+        if (value instanceof Boolean || value instanceof boolean[]) return BOOLEAN;
+        if (value instanceof String || value instanceof String[]) return STRING;
+        return NIL;
+    }
+
+    private static Object newArray(byte type, int length) {
+        switch (type) {
+            case NUMBER: return new double[length];
+            case BOOLEAN: return new boolean[length];
+            case STRING: return new String[length];
+            default: return new Object[length];
+        }
+    }
+
+    private static void fill(Object array, Object value, int length) {
+        if (array instanceof double[]) {
+            Arrays.fill((double[]) array, 0, length, (double) value);
+        } else if (array instanceof boolean[]) {
+            Arrays.fill((boolean[]) array, 0, length, (boolean) value);
+        } else {
+            Arrays.fill((Object[]) array, 0, length, value);
+        }
+    }
+
+    // 평가
+
+    /**
+     * 명령 하나를 블록 하나에 실행한다. 입력 열은 블록의 시작 행부터, 상수와 임시 값은 0부터 읽는다.
+     */
+    private void execute(int instruction, Object[] slots, int start, int length) {
+        int left = lefts[instruction];
+        int right = rights[instruction];
+        int leftOffset = left < columnTypes.length ? start : 0;
+        int rightOffset = right < columnTypes.length ? start : 0;
+        Object out = slots[outs[instruction]];
+
+        switch (ops[instruction]) {
+            case NEGATE:
+                negate((double[]) slots[left], leftOffset, (double[]) out, length);
+                break;
+            case NOT:
+                not((boolean[]) slots[left], leftOffset, (boolean[]) out, length);
+                break;
+            case ADD:
+                add((double[]) slots[left], leftOffset, (double[]) slots[right], rightOffset, (double[]) out, length);
+                break;
+            case SUBTRACT:
+                subtract((double[]) slots[left], leftOffset, (double[]) slots[right], rightOffset, (double[]) out, length);
+                break;
+            case MULTIPLY:
+                multiply((double[]) slots[left], leftOffset, (double[]) slots[right], rightOffset, (double[]) out, length);
+                break;
+            case DIVIDE:
+                divide((double[]) slots[left], leftOffset, (double[]) slots[right], rightOffset, (double[]) out, length);
+                break;
+            case GREATER:
+                greater((double[]) slots[left], leftOffset, (double[]) slots[right], rightOffset, (boolean[]) out, length);
+                break;
+            case GREATER_EQUAL:
+                greaterEqual((double[]) slots[left], leftOffset, (double[]) slots[right], rightOffset, (boolean[]) out, length);
+                break;
+            case LESS:
+                // a < b는 b > a이다.
+                greater((double[]) slots[right], rightOffset, (double[]) slots[left], leftOffset, (boolean[]) out, length);
+                break;
+            case LESS_EQUAL:
+                greaterEqual((double[]) slots[right], rightOffset, (double[]) slots[left], leftOffset, (boolean[]) out, length);
+                break;
+            case NUMBER_EQUAL:
+                numberEqual((double[]) slots[left], leftOffset, (double[]) slots[right], rightOffset, (boolean[]) out, length);
+                break;
+            case BOOLEAN_EQUAL:
+                booleanEqual((boolean[]) slots[left], leftOffset, (boolean[]) slots[right], rightOffset, (boolean[]) out, length);
+                break;
+            case STRING_EQUAL:
+                stringEqual((String[]) slots[left], leftOffset, (String[]) slots[right], rightOffset, (boolean[]) out, length);
+                break;
+            case CONCAT:
+                concat((String[]) slots[left], leftOffset, (String[]) slots[right], rightOffset, (String[]) out, length);
+                break;
+        }
+    }
+
+    private static void negate(double[] a, int aOffset, double[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = -a[aOffset + i];
+    }
+
+    private static void not(boolean[] a, int aOffset, boolean[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = !a[aOffset + i];
+    }
+
+    private static void add(double[] a, int aOffset, double[] b, int bOffset, double[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i] + b[bOffset + i];
+    }
+
+    private static void subtract(double[] a, int aOffset, double[] b, int bOffset, double[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i] - b[bOffset + i];
+    }
+
+    private static void multiply(double[] a, int aOffset, double[] b, int bOffset, double[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i] * b[bOffset + i];
+    }
+
+    private static void divide(double[] a, int aOffset, double[] b, int bOffset, double[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i] / b[bOffset + i];
+    }
+
+    private static void greater(double[] a, int aOffset, double[] b, int bOffset, boolean[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i] > b[bOffset + i];
+    }
+
+    private static void greaterEqual(double[] a, int aOffset, double[] b, int bOffset, boolean[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i] >= b[bOffset + i];
+    }
+
+    /**
+     * Double.equals()와 같은 규칙으로 비교한다.
+     */
+    private static void numberEqual(double[] a, int aOffset, double[] b, int bOffset, boolean[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            out[i] = Double.doubleToLongBits(a[aOffset + i]) == Double.doubleToLongBits(b[bOffset + i]);
+        }
+    }
+
+    private static void booleanEqual(boolean[] a, int aOffset, boolean[] b, int bOffset, boolean[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i] == b[bOffset + i];
+    }
+
+    private static void stringEqual(String[] a, int aOffset, String[] b, int bOffset, boolean[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i].equals(b[bOffset + i]);
+    }
+
+    private static void concat(String[] a, int aOffset, String[] b, int bOffset, String[] out, int length) {
+        for (int i = 0; i < length; i++) out[i] = a[aOffset + i] + b[bOffset + i];
+    }
+}
@@ -0,0 +1,70 @@
+package com.binn328.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ColumnExpr에 넘기는 열 단위 입력
+ * 열마다 이름과 값 배열을 가지며, 모든 열의 길이(행 수)가 같아야 한다.
+ * 숫자 열은 double[], 참/거짓 열은 boolean[], 문자열 열은 String[]이다. Lox에서 nil인 값은 열에 넣을 수 없다.
+ * 배열은 복사하지 않고 그대로 쓴다.
+ */
+class Columns {
+    private final List<String> names = new ArrayList<>();
+    private final List<Object> arrays = new ArrayList<>();
+    private int rows = 0;
+
+    Columns add(String name, double[] values) {
+        return add(name, values, values.length);
+    }
+
+    Columns add(String name, boolean[] values) {
+        return add(name, values, values.length);
+    }
+
+    Columns add(String name, String[] values) {
+        for (String value : values) {
+            if (value == null) throw new IllegalArgumentException("Column " + name + " has a null value.");
+        }
+        return add(name, values, values.length);
+    }
+
+    private Columns add(String name, Object values, int length) {
+        if (names.contains(name)) throw new IllegalArgumentException("Duplicate column " + name + ".");
+        if (!names.isEmpty() && length != rows) {
+            throw new IllegalArgumentException("Column " + name + " has " + length + " rows, expected " + rows + ".");
+        }
+
+        names.add(name);
+        arrays.add(values);
+        rows = length;
+        return this;
+    }
+
+    /**
+     * @return 열 이름. 순서가 열 번호이다.
+     */
+    List<String> names() {
+        return Collections.unmodifiableList(names);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    /**
+     * @return 행 수. 열이 없으면 0
+     */
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * @param index 열 번호
+     * @return double[], boolean[], String[] 중 하나
+     */
+    Object column(int index) {
+        return arrays.get(index);
+    }
+}
@@ -0,0 +1,144 @@
+package com.binn328.lox;
+
+/**
+ * 구문 트리를 바이트코드 청크로 낮춘다.
+ * 각 노드는 피연산자를 먼저 내보낸 뒤 연산 명령어를 내보내므로, 결과는 후위 표기 순서가 된다.
+ * 트리는 ExprStack으로 재귀 호출 없이 순회한다.
+ */
+class Compiler implements Expr.Visitor<Void> {
+    private final ExprStack pending = new ExprStack();
+    private Chunk chunk;
+    /**
+     * 현재 명령어까지 실행했을 때의 스택 깊이
+     */
+    private int depth;
+
+    /**
+     * 식 하나를 청크로 컴파일한다.
+     * @param expression
+     * @return
+     */
+    Chunk compile(Expr expression) {
+        chunk = new Chunk();
+        depth = 0;
+
+        pending.clear();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Expr node = pending.pop();
+            if (!pending.isExit()) {
+                node.accept(this);
+            } else if (node instanceof Expr.Unary) {
+                emitUnary((Expr.Unary) node);
+            } else {
+                emitBinary((Expr.Binary) node);
+            }
+        }
+        chunk.write(OpCode.RETURN);
+
+        return chunk;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        pending.pushExit(expr);
+        pending.push(expr.right);
+        pending.push(expr.left);
+        return null;
+    }
+
+    /**
+     * 두 피연산자를 내보낸 뒤에 연산 명령어를 내보낸다.
+     * @param expr
+     */
+    private void emitBinary(Expr.Binary expr) {
+        switch (expr.operator.type) {
+            case BANG_EQUAL:
+                emit(OpCode.EQUAL, expr.operator, -1);
+                emit(OpCode.NOT, expr.operator, 0);
+                break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL, expr.operator, -1); break;
+            case GREATER: emit(OpCode.GREATER, expr.operator, -1); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL, expr.operator, -1); break;
+            case LESS: emit(OpCode.LESS, expr.operator, -1); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL, expr.operator, -1); break;
+            case PLUS: emit(OpCode.ADD, expr.operator, -1); break;
+            case MINUS: emit(OpCode.SUBTRACT, expr.operator, -1); break;
+            case STAR: emit(OpCode.MULTIPLY, expr.operator, -1); break;
+            case SLASH: emit(OpCode.DIVIDE, expr.operator, -1); break;
+        }
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        pending.push(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL, null, 1);
+        } else if (expr.value.equals(true)) {
+            emit(OpCode.TRUE, null, 1);
+        } else if (expr.value.equals(false)) {
+            emit(OpCode.FALSE, null, 1);
+        } else {
+            emitConstant(expr.value);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        pending.pushExit(expr);
+        pending.push(expr.right);
+        return null;
+    }
+
+    private void emitUnary(Expr.Unary expr) {
+        switch (expr.operator.type) {
+            case BANG: emit(OpCode.NOT, expr.operator, 0); break;
+            case MINUS: emit(OpCode.NEGATE, expr.operator, 0); break;
+        }
+    }
+
+    /**
+     * 상수를 스택에 넣는 명령어를 내보낸다.
+     * 인덱스가 1바이트에 들어가지 않으면 3바이트 피연산자를 쓰는 CONSTANT_LONG을 사용한다.
+     * @param value
+     */
+    private void emitConstant(Object value) {
+        int index = chunk.addConstant(value);
+
+        if (index <= 0xff) {
+            emit(OpCode.CONSTANT, null, 1);
+            chunk.write((byte) index);
+        } else if (index <= 0xffffff) {
+            emit(OpCode.CONSTANT_LONG, null, 1);
+            chunk.write((byte) (index >>> 16));
+            chunk.write((byte) (index >>> 8));
+            chunk.write((byte) index);
+        } else {
+            throw new IllegalStateException("Too many constants in one chunk.");
+        }
+    }
+
+    /**
+     * 명령어를 내보내고 스택 깊이를 갱신한다.
+     * @param op
+     * @param token 명령어를 만든 토큰
+     * @param effect 명령어가 스택 깊이를 바꾸는 정도
+     */
+    private void emit(byte op, Token token, int effect) {
+        if (token != null) {
+            chunk.write(op, token.line);
+        } else {
+            chunk.write(op);
+        }
+
+        depth += effect;
+        if (depth > chunk.maxStack) chunk.maxStack = depth;
+    }
+}
@@ -0,0 +1,35 @@
+package com.binn328.lox;
+
+/**
+ * 스캐너와 파서가 보고한 에러 하나
+ * 세션의 diagnostics에 보고한 순서대로 쌓이므로, 한 번 파싱한 뒤 모든 에러를 한꺼번에 볼 수 있다.
+ */
+class Diagnostic {
+    /**
+     * 에러가 발생한 줄 번호
+     */
+    final int line;
+    /**
+     * 에러가 발생한 토큰. 스캐너가 보고한 에러면 ""이고, 파일 끝이면 " at end"이다.
+     */
+    final String where;
+    /**
+     * 에러가 발생한 원인에 대한 메시지
+     */
+    final String message;
+
+    Diagnostic(int line, String where, String message) {
+        this.line = line;
+        this.where = where;
+        this.message = message;
+    }
+
+    /**
+     * 사용자에게 보여주는 형식: [line 1] Error at '+': Expect expression.
+     * @return
+     */
+    @Override
+    public String toString() {
+        return "[line " + line + "] Error" + where + ": " + message;
+    }
+}
@@ -0,0 +1,650 @@
+package com.binn328.lox;
+
+import java.util.Arrays;
+
+/**
+ * 실행하면서 스스로를 특수화하는 노드로 이루어진 실행 트리
+ * Binary와 Unary 노드는 처음 실행할 때 피연산자의 타입을 보고 숫자 전용, 문자열 전용 같은 노드로 자신을 바꾼다.
+ * 특수화한 노드는 예상한 타입만 확인하고 바로 계산하며, 다른 타입을 만나면 모든 타입을 다루는 일반 노드로 다시 바뀐다.
+ * 일반 노드는 더 바뀌지 않으므로 노드 하나는 많아야 두 번 바뀐다.
+ * 숫자 노드는 자식을 executeDouble()로 실행하여, 숫자 연산이 이어지는 동안에는 중간 결과를 박싱하지 않는다.
+ * 어느 노드로 실행해도 결과와 에러는 Interpreter와 같다.
+ *
+ * 노드는 자식을 재귀 호출로 실행하므로 MAX_DEPTH보다 깊은 트리는 만들지 않는다.
+ * 실행하면서 트리가 바뀌므로 한 번에 한 스레드만 실행한다.
+ */
+class ExecutionTree {
+    /**
+     * 만들 수 있는 가장 깊은 트리. 괄호는 노드를 만들지 않으므로 세지 않는다.
+     */
+    static final int MAX_DEPTH = 1000;
+
+    /**
+     * 노드가 어떤 타입에 특수화되어 있는지
+     */
+    enum State {
+        /**
+         * 아직 실행하지 않았다.
+         */
+        UNINITIALIZED,
+        NUMBER,
+        STRING,
+        BOOLEAN,
+        /**
+         * 모든 타입을 다룬다.
+         */
+        GENERIC
+    }
+
+    private final Root root;
+
+    private ExecutionTree(Node node) {
+        this.root = new Root(node);
+    }
+
+    /**
+     * 구문 트리로 실행 트리를 만든다. 모든 연산자 노드는 UNINITIALIZED 상태로 시작한다.
+     * @param expression
+     * @return 트리가 MAX_DEPTH보다 깊으면 null
+     */
+    static ExecutionTree build(Expr expression) {
+        ExprStack pending = new ExprStack();
+        Node[] nodes = new Node[16];
+        int[] depths = new int[16];
+        int top = 0;
+
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Expr expr = pending.pop();
+            if (top + 1 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+
+            if (pending.isExit()) {
+                if (expr.kind == Expr.UNARY) {
+                    nodes[top - 1] = new UninitializedUnary(((Expr.Unary) expr).operator, nodes[top - 1]);
+                    depths[top - 1]++;
+                } else {
+                    top--;
+                    nodes[top - 1] = new UninitializedBinary(((Expr.Binary) expr).operator, nodes[top - 1], nodes[top]);
+                    depths[top - 1] = Math.max(depths[top - 1], depths[top]) + 1;
+                }
+                if (depths[top - 1] > MAX_DEPTH) return null;
+                continue;
+            }
+
+            switch (expr.kind) {
+                case Expr.LITERAL:
+                    nodes[top] = new Literal(((Expr.Literal) expr).value);
+                    depths[top++] = 1;
+                    break;
+                case Expr.GROUPING:
+                    // 괄호는 실행에 영향이 없으므로 노드를 만들지 않는다.
+                    pending.push(((Expr.Grouping) expr).expression);
+                    break;
+                case Expr.UNARY:
+                    pending.pushExit(expr);
+                    pending.push(((Expr.Unary) expr).right);
+                    break;
+                case Expr.BINARY:
+                    pending.pushExit(expr);
+                    pending.push(((Expr.Binary) expr).right);
+                    pending.push(((Expr.Binary) expr).left);
+                    break;
+            }
+        }
+
+        return new ExecutionTree(nodes[0]);
+    }
+
+    /**
+     * 트리를 실행한다. 타입이 맞지 않으면 Interpreter와 같은 토큰과 메시지로 RuntimeError를 던진다.
+     * @return
+     */
+    synchronized Object execute() {
+        return root.child.execute();
+    }
+
+    /**
+     * @return 지금까지 노드가 다른 노드로 바뀐 횟수
+     */
+    synchronized int rewrites() {
+        return root.rewrites;
+    }
+
+    /**
+     * 트리를 AstPrinter처럼 괄호로 묶은 전위 표기로 쓰되, 연산자 뒤에 노드의 상태를 붙인다.
+     * 예: (+:number 1 (-:uninitialized 2))
+     * @return
+     */
+    synchronized String describe() {
+        StringBuilder builder = new StringBuilder();
+        root.child.describe(builder);
+        return builder.toString();
+    }
+
+    /**
+     * executeDouble()의 결과가 숫자가 아닐 때 던지는 예외. 실행한 값을 담아 부모 노드가 다시 실행하지 않고 쓰게 한다.
+     */
+    static final class UnexpectedResult extends Exception {
+        final Object value;
+
+        UnexpectedResult(Object value) {
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    abstract static class Node {
+        Node parent;
+
+        abstract Object execute();
+
+        /**
+         * 결과를 박싱하지 않고 double로 실행한다.
+         * @return
+         * @throws UnexpectedResult 결과가 숫자가 아니면 그 값을 담아 던진다.
+         */
+        double executeDouble() throws UnexpectedResult {
+            return expectDouble(execute());
+        }
+
+        abstract State state();
+
+        abstract void describe(StringBuilder out);
+
+        /**
+         * 자식 노드를 다른 노드로 바꾼다.
+         */
+        void replaceChild(Node child, Node replacement) {
+            throw new IllegalStateException(getClass().getSimpleName() + " has no children.");
+        }
+
+        /**
+         * 트리에서 이 노드 자리에 다른 노드를 넣는다.
+         * @param replacement
+         * @return replacement
+         */
+        final <T extends Node> T replace(T replacement) {
+            replacement.parent = parent;
+            parent.replaceChild(this, replacement);
+
+            Node node = parent;
+            while (node.parent != null) node = node.parent;
+            ((Root) node).rewrites++;
+            return replacement;
+        }
+
+        final Node adopt(Node child) {
+            child.parent = this;
+            return child;
+        }
+
+        static double expectDouble(Object value) throws UnexpectedResult {
+            if (value instanceof Double) return (double) value;
+            throw new UnexpectedResult(value);
+        }
+    }
+
+    /**
+     * 트리의 맨 위 노드를 바꿀 수 있도록 잡고 있는 노드
+     */
+    private static final class Root extends Node {
+        Node child;
+        int rewrites = 0;
+
+        Root(Node child) {
+            this.child = adopt(child);
+        }
+
+        @Override
+        Object execute() {
+            return child.execute();
+        }
+
+        @Override
+        State state() {
+            return child.state();
+        }
+
+        @Override
+        void describe(StringBuilder out) {
+            child.describe(out);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            this.child = replacement;
+        }
+    }
+
+    private static final class Literal extends Node {
+        private final Object value;
+        private final double number;
+
+        Literal(Object value) {
+            this.value = value;
+            this.number = value instanceof Double ? (double) value : 0;
+        }
+
+        @Override
+        Object execute() {
+            return value;
+        }
+
+        @Override
+        double executeDouble() throws UnexpectedResult {
+            if (value instanceof Double) return number;
+            throw new UnexpectedResult(value);
+        }
+
+        @Override
+        State state() {
+            if (value instanceof Double) return State.NUMBER;
+            if (value instanceof String) return State.STRING;
+            if (value instanceof Boolean) return State.BOOLEAN;
+            return State.GENERIC;
+        }
+
+        @Override
+        void describe(StringBuilder out) {
+            out.append(value == null ? "nil" : value.toString());
+        }
+    }
+
+    // 단항 연산자 노드
+
+    abstract static class UnaryNode extends Node {
+        final Token operator;
+        Node operand;
+
+        UnaryNode(Token operator, Node operand) {
+            this.operator = operator;
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute() {
+            return apply(operand.execute());
+        }
+
+        /**
+         * 실행한 피연산자에 연산자를 적용한다.
+         */
+        abstract Object apply(Object value);
+
+        /**
+         * 일반 노드로 바꾸고 연산자를 적용한다. 피연산자는 다시 실행하지 않는다.
+         */
+        final Object generalize(Object value) {
+            return replace(new GenericUnary(operator, operand)).apply(value);
+        }
+
+        @Override
+        final void replaceChild(Node child, Node replacement) {
+            operand = replacement;
+        }
+
+        @Override
+        final void describe(StringBuilder out) {
+            out.append('(').append(operator.lexeme()).append(':')
+                    .append(state().name().toLowerCase()).append(' ');
+            operand.describe(out);
+            out.append(')');
+        }
+    }
+
+    private static final class UninitializedUnary extends UnaryNode {
+        UninitializedUnary(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object apply(Object value) {
+            if (operator.type == TokenType.MINUS && value instanceof Double) {
+                return replace(new NumberNegate(operator, operand)).apply(value);
+            }
+            if (operator.type == TokenType.BANG && value instanceof Boolean) {
+                return replace(new BooleanNot(operator, operand)).apply(value);
+            }
+            return generalize(value);
+        }
+
+        @Override
+        State state() {
+            return State.UNINITIALIZED;
+        }
+    }
+
+    private static final class NumberNegate extends UnaryNode {
+        NumberNegate(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute() {
+            try {
+                return -operand.executeDouble();
+            } catch (UnexpectedResult e) {
+                return generalize(e.value);
+            }
+        }
+
+        @Override
+        double executeDouble() throws UnexpectedResult {
+            try {
+                return -operand.executeDouble();
+            } catch (UnexpectedResult e) {
+                return expectDouble(generalize(e.value));
+            }
+        }
+
+        @Override
+        Object apply(Object value) {
+            if (value instanceof Double) return -(double) value;
+            return generalize(value);
+        }
+
+        @Override
+        State state() {
+            return State.NUMBER;
+        }
+    }
+
+    private static final class BooleanNot extends UnaryNode {
+        BooleanNot(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object apply(Object value) {
+            if (value instanceof Boolean) return !(boolean) value;
+            return generalize(value);
+        }
+
+        @Override
+        State state() {
+            return State.BOOLEAN;
+        }
+    }
+
+    private static final class GenericUnary extends UnaryNode {
+        GenericUnary(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object apply(Object value) {
+            if (operator.type == TokenType.MINUS) {
+                if (!(value instanceof Double)) throw new RuntimeError(operator, "Operand must be a number.");
+                return -(double) value;
+            }
+            return !Interpreter.isTruthy(value);
+        }
+
+        @Override
+        State state() {
+            return State.GENERIC;
+        }
+    }
+
+    // 이항 연산자 노드
+
+    abstract static class BinaryNode extends Node {
+        final Token operator;
+        Node left;
+        Node right;
+
+        BinaryNode(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute() {
+            // Interpreter와 같이 두 피연산자를 모두 실행한 뒤에 타입을 확인한다.
+            Object leftValue = left.execute();
+            Object rightValue = right.execute();
+            return apply(leftValue, rightValue);
+        }
+
+        abstract Object apply(Object left, Object right);
+
+        final Object generalize(Object leftValue, Object rightValue) {
+            return replace(new GenericBinary(operator, left, right)).apply(leftValue, rightValue);
+        }
+
+        @Override
+        final void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = replacement;
+            } else {
+                right = replacement;
+            }
+        }
+
+        @Override
+        final void describe(StringBuilder out) {
+            out.append('(').append(operator.lexeme()).append(':')
+                    .append(state().name().toLowerCase()).append(' ');
+            left.describe(out);
+            out.append(' ');
+            right.describe(out);
+            out.append(')');
+        }
+    }
+
+    private static final class UninitializedBinary extends BinaryNode {
+        UninitializedBinary(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            TokenType type = operator.type;
+            boolean equality = type == TokenType.EQUAL_EQUAL || type == TokenType.BANG_EQUAL;
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return replace(new NumberBinary(operator, left, right)).apply(leftValue, rightValue);
+            }
+            if (leftValue instanceof String && rightValue instanceof String && (equality || type == TokenType.PLUS)) {
+                return replace(new StringBinary(operator, left, right)).apply(leftValue, rightValue);
+            }
+            if (leftValue instanceof Boolean && rightValue instanceof Boolean && equality) {
+                return replace(new BooleanBinary(operator, left, right)).apply(leftValue, rightValue);
+            }
+            return generalize(leftValue, rightValue);
+        }
+
+        @Override
+        State state() {
+            return State.UNINITIALIZED;
+        }
+    }
+
+    private static final class NumberBinary extends BinaryNode {
+        /**
+         * 결과도 숫자인 연산자인지. 비교 연산자면 false이다.
+         */
+        private final boolean arithmetic;
+
+        NumberBinary(Token operator, Node left, Node right) {
+            super(operator, left, right);
+            TokenType type = operator.type;
+            this.arithmetic = type == TokenType.PLUS || type == TokenType.MINUS
+                    || type == TokenType.STAR || type == TokenType.SLASH;
+        }
+
+        /**
+         * 두 피연산자를 double로 실행한다. 숫자가 아닌 값이 나오면 일반 노드로 바뀌고 예외를 던지지 않는다.
+         */
+        @Override
+        Object execute() {
+            double a;
+            double b;
+            try {
+                a = left.executeDouble();
+            } catch (UnexpectedResult e) {
+                // 왼쪽이 숫자가 아니어도 오른쪽을 먼저 실행해야 오른쪽의 에러가 먼저 보고된다.
+                return generalize(e.value, right.execute());
+            }
+            try {
+                b = right.executeDouble();
+            } catch (UnexpectedResult e) {
+                return generalize(a, e.value);
+            }
+
+            if (arithmetic) return arithmetic(a, b);
+            return compare(a, b);
+        }
+
+        @Override
+        double executeDouble() throws UnexpectedResult {
+            if (!arithmetic) return expectDouble(execute());
+
+            double a;
+            double b;
+            try {
+                a = left.executeDouble();
+            } catch (UnexpectedResult e) {
+                return expectDouble(generalize(e.value, right.execute()));
+            }
+            try {
+                b = right.executeDouble();
+            } catch (UnexpectedResult e) {
+                return expectDouble(generalize(a, e.value));
+            }
+            return arithmetic(a, b);
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            if (!(leftValue instanceof Double) || !(rightValue instanceof Double)) {
+                return generalize(leftValue, rightValue);
+            }
+
+            double a = (double) leftValue;
+            double b = (double) rightValue;
+            if (arithmetic) return arithmetic(a, b);
+            return compare(a, b);
+        }
+
+        private double arithmetic(double a, double b) {
+            switch (operator.type) {
+                case PLUS: return a + b;
+                case MINUS: return a - b;
+                case STAR: return a * b;
+                case SLASH: return a / b;
+            }
+            throw new IllegalStateException("Unknown operator " + operator.type + ".");
+        }
+
+        private boolean compare(double a, double b) {
+            switch (operator.type) {
+                case GREATER: return a > b;
+                case GREATER_EQUAL: return a >= b;
+                case LESS: return a < b;
+                case LESS_EQUAL: return a <= b;
+                // Double.equals()와 같은 규칙을 따른다.
+                case EQUAL_EQUAL: return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+                case BANG_EQUAL: return Double.doubleToLongBits(a) != Double.doubleToLongBits(b);
+            }
+            throw new IllegalStateException("Unknown operator " + operator.type + ".");
+        }
+
+        @Override
+        State state() {
+            return State.NUMBER;
+        }
+    }
+
+    private static final class StringBinary extends BinaryNode {
+        StringBinary(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            if (!(leftValue instanceof String) || !(rightValue instanceof String)) {
+                return generalize(leftValue, rightValue);
+            }
+
+            switch (operator.type) {
+                case PLUS: return (String) leftValue + (String) rightValue;
+                case EQUAL_EQUAL: return leftValue.equals(rightValue);
+                case BANG_EQUAL: return !leftValue.equals(rightValue);
+            }
+            throw new IllegalStateException("Unknown operator " + operator.type + ".");
+        }
+
+        @Override
+        State state() {
+            return State.STRING;
+        }
+    }
+
+    private static final class BooleanBinary extends BinaryNode {
+        BooleanBinary(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            if (!(leftValue instanceof Boolean) || !(rightValue instanceof Boolean)) {
+                return generalize(leftValue, rightValue);
+            }
+
+            boolean equal = (boolean) leftValue == (boolean) rightValue;
+            return operator.type == TokenType.EQUAL_EQUAL ? equal : !equal;
+        }
+
+        @Override
+        State state() {
+            return State.BOOLEAN;
+        }
+    }
+
+    private static final class GenericBinary extends BinaryNode {
+        GenericBinary(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object apply(Object leftValue, Object rightValue) {
+            switch (operator.type) {
+                case BANG_EQUAL: return !Interpreter.isEqual(leftValue, rightValue);
+                case EQUAL_EQUAL: return Interpreter.isEqual(leftValue, rightValue);
+                case PLUS:
+                    if (leftValue instanceof Double && rightValue instanceof Double) {
+                        return (double) leftValue + (double) rightValue;
+                    }
+                    if (leftValue instanceof String && rightValue instanceof String) {
+                        return (String) leftValue + (String) rightValue;
+                    }
+                    throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+            }
+
+            if (!(leftValue instanceof Double) || !(rightValue instanceof Double)) {
+                throw new RuntimeError(operator, "Operands must be numbers.");
+            }
+            double a = (double) leftValue;
+            double b = (double) rightValue;
+            switch (operator.type) {
+                case MINUS: return a - b;
+                case STAR: return a * b;
+                case SLASH: return a / b;
+                case GREATER: return a > b;
+                case GREATER_EQUAL: return a >= b;
+                case LESS: return a < b;
+                case LESS_EQUAL: return a <= b;
+            }
+            throw new IllegalStateException("Unknown operator " + operator.type + ".");
+        }
+
+        @Override
+        State state() {
+            return State.GENERIC;
+        }
+    }
+}
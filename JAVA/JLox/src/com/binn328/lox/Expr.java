@@ -1,6 +1,11 @@
 package com.binn328.lox;
 
 public abstract class Expr {
+    static final byte BINARY = 0;
+    static final byte GROUPING = 1;
+    static final byte LITERAL = 2;
+    static final byte UNARY = 3;
+
     interface Visitor<R> {
         R visitBinaryExpr(Binary expr);
 
@@ -10,8 +15,39 @@ public abstract class Expr {
 
         R visitUnaryExpr(Unary expr);
     }
+
+    interface DoubleVisitor {
+        double visitBinaryExpr(Binary expr);
+
+        double visitGroupingExpr(Grouping expr);
+
+        double visitLiteralExpr(Literal expr);
+
+        double visitUnaryExpr(Unary expr);
+    }
+
+    interface BooleanVisitor {
+        boolean visitBinaryExpr(Binary expr);
+
+        boolean visitGroupingExpr(Grouping expr);
+
+        boolean visitLiteralExpr(Literal expr);
+
+        boolean visitUnaryExpr(Unary expr);
+    }
+
+    /**
+     * 노드의 종류. 이 값으로 switch하면 가상 호출 없이 노드를 구분할 수 있다.
+     */
+    final byte kind;
+
+    Expr(byte kind) {
+        this.kind = kind;
+    }
+
     static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
+            super(BINARY);
             this.left = left;
             this.operator = operator;
             this.right = right;
@@ -22,12 +58,24 @@ public abstract class Expr {
             return visitor.visitBinaryExpr(this);
         }
 
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitBinaryExpr(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitBinaryExpr(this);
+        }
+
         final Expr left;
         final Token operator;
         final Expr right;
     }
+
     static class Grouping extends Expr {
         Grouping(Expr expression) {
+            super(GROUPING);
             this.expression = expression;
         }
 
@@ -36,10 +84,22 @@ public abstract class Expr {
             return visitor.visitGroupingExpr(this);
         }
 
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitGroupingExpr(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitGroupingExpr(this);
+        }
+
         final Expr expression;
     }
+
     static class Literal extends Expr {
         Literal(Object value) {
+            super(LITERAL);
             this.value = value;
         }
 
@@ -48,10 +108,22 @@ public abstract class Expr {
             return visitor.visitLiteralExpr(this);
         }
 
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitLiteralExpr(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitLiteralExpr(this);
+        }
+
         final Object value;
     }
+
     static class Unary extends Expr {
         Unary(Token operator, Expr right) {
+            super(UNARY);
             this.operator = operator;
             this.right = right;
         }
@@ -61,9 +133,23 @@ public abstract class Expr {
             return visitor.visitUnaryExpr(this);
         }
 
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitUnaryExpr(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitUnaryExpr(this);
+        }
+
         final Token operator;
         final Expr right;
     }
 
-    abstract <R > R accept(Visitor < R > visitor);
+    abstract <R> R accept(Visitor<R> visitor);
+
+    abstract double accept(DoubleVisitor visitor);
+
+    abstract boolean accept(BooleanVisitor visitor);
 }
@@ -0,0 +1,166 @@
+package com.binn328.lox;
+
+import java.util.Arrays;
+
+/**
+ * Expr 구문 트리를 노드마다 객체를 만들지 않고 필드별 배열에 나누어 저장하는 아레나
+ * 노드는 배열의 인덱스로 가리키고, 한 번의 파싱이 만든 노드는 모두 이 아레나 하나에 들어간다.
+ * GenerateAst가 Expr와 같은 타입 설명으로 만든 파일이다.
+ */
+class ExprArena {
+    static final byte BINARY = 0;
+    static final byte GROUPING = 1;
+    static final byte LITERAL = 2;
+    static final byte UNARY = 3;
+
+    /**
+     * Object 필드 값의 종류. tags에 담는다.
+     */
+    static final byte NIL = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte NUMBER = 3;
+    static final byte STRING = 4;
+    static final byte COLUMN = 5;
+
+    interface Visitor<R> {
+        R visitBinaryExpr(int expr);
+        R visitGroupingExpr(int expr);
+        R visitLiteralExpr(int expr);
+        R visitUnaryExpr(int expr);
+    }
+
+    /**
+     * refs에 담긴 토큰 인덱스가 가리키는 토큰 버퍼
+     */
+    final TokenBuffer tokens;
+    byte[] kinds;
+    int[] lefts;
+    int[] rights;
+    int[] refs;
+    /**
+     * Object 필드 값의 종류(NIL ~ COLUMN)와 NUMBER 값. STRING의 심볼 ID와 COLUMN의 열 번호는 refs에 둔다.
+     */
+    byte[] tags;
+    double[] numbers;
+    /**
+     * 저장된 노드 수
+     */
+    int count = 0;
+
+    ExprArena(TokenBuffer tokens) {
+        this.tokens = tokens;
+
+        // 노드 수는 토큰 수를 넘지 않는 경우가 대부분이다.
+        int capacity = Math.max(16, tokens.count);
+        kinds = new byte[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        refs = new int[capacity];
+        tags = new byte[capacity];
+        numbers = new double[capacity];
+    }
+
+    int binary(int left, int operator, int right) {
+        int expr = add(BINARY);
+        lefts[expr] = left;
+        refs[expr] = operator;
+        rights[expr] = right;
+        return expr;
+    }
+
+    int binaryLeft(int expr) {
+        return lefts[expr];
+    }
+
+    int binaryOperator(int expr) {
+        return refs[expr];
+    }
+
+    int binaryRight(int expr) {
+        return rights[expr];
+    }
+
+    int grouping(int expression) {
+        int expr = add(GROUPING);
+        lefts[expr] = expression;
+        return expr;
+    }
+
+    int groupingExpression(int expr) {
+        return lefts[expr];
+    }
+
+    int literal(byte tag, double number, int ref) {
+        int expr = add(LITERAL);
+        tags[expr] = tag;
+        numbers[expr] = number;
+        refs[expr] = ref;
+        return expr;
+    }
+
+    byte literalTag(int expr) {
+        return tags[expr];
+    }
+
+    double literalNumber(int expr) {
+        return numbers[expr];
+    }
+
+    int literalRef(int expr) {
+        return refs[expr];
+    }
+
+    String literalString(int expr) {
+        return tokens.symbolTable.name(refs[expr]);
+    }
+
+    int unary(int operator, int right) {
+        int expr = add(UNARY);
+        refs[expr] = operator;
+        lefts[expr] = right;
+        return expr;
+    }
+
+    int unaryOperator(int expr) {
+        return refs[expr];
+    }
+
+    int unaryRight(int expr) {
+        return lefts[expr];
+    }
+
+    /**
+     * 마지막으로 만든 노드. 자식 노드를 먼저 만들어야 하므로 파서가 만든 아레나에서는 루트 노드이다.
+     * @return
+     */
+    int root() {
+        return count - 1;
+    }
+
+    <R> R accept(int expr, Visitor<R> visitor) {
+        switch (kinds[expr]) {
+            case BINARY: return visitor.visitBinaryExpr(expr);
+            case GROUPING: return visitor.visitGroupingExpr(expr);
+            case LITERAL: return visitor.visitLiteralExpr(expr);
+            case UNARY: return visitor.visitUnaryExpr(expr);
+        }
+        throw new IllegalStateException("Unknown node kind " + kinds[expr] + ".");
+    }
+
+    private int add(byte kind) {
+        if (count == kinds.length) grow();
+        kinds[count] = kind;
+        return count++;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        refs = Arrays.copyOf(refs, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+    }
+}
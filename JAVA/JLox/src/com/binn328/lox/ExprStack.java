@@ -0,0 +1,72 @@
+package com.binn328.lox;
+
+import java.util.Arrays;
+
+/**
+ * 구문 트리를 재귀 호출 없이 후위 순서로 순회하기 위한 작업 스택
+ * 노드를 처음 꺼냈을 때 자식 노드를 넣고, 그 앞에 pushExit()로 자기 자신을 다시 넣어두면
+ * 자식을 모두 처리한 뒤에 다시 꺼내어 자기 연산을 처리할 수 있다.
+ */
+class ExprStack {
+    private Expr[] nodes = new Expr[16];
+    private boolean[] exits = new boolean[16];
+    private int top = 0;
+    /**
+     * 마지막으로 꺼낸 노드가 pushExit()로 넣은 것인지
+     */
+    private boolean exit;
+
+    /**
+     * 처음 방문할 노드를 넣는다.
+     * @param expr
+     */
+    void push(Expr expr) {
+        push(expr, false);
+    }
+
+    /**
+     * 자식을 모두 처리한 뒤에 다시 꺼낼 노드를 넣는다. 자식 노드보다 먼저 넣어야 한다.
+     * @param expr
+     */
+    void pushExit(Expr expr) {
+        push(expr, true);
+    }
+
+    boolean isEmpty() {
+        return top == 0;
+    }
+
+    /**
+     * 노드를 꺼낸다. pushExit()로 넣은 노드인지는 isExit()로 확인한다.
+     * @return
+     */
+    Expr pop() {
+        top--;
+        exit = exits[top];
+        Expr expr = nodes[top];
+        nodes[top] = null;
+        return expr;
+    }
+
+    boolean isExit() {
+        return exit;
+    }
+
+    /**
+     * 순회가 에러로 중단되었을 때 남은 노드를 비운다.
+     */
+    void clear() {
+        Arrays.fill(nodes, 0, top, null);
+        top = 0;
+    }
+
+    private void push(Expr expr, boolean exit) {
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            exits = Arrays.copyOf(exits, top * 2);
+        }
+        nodes[top] = expr;
+        exits[top] = exit;
+        top++;
+    }
+}
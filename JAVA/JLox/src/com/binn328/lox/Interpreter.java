@@ -1,8 +1,371 @@
 package com.binn328.lox;
 
-public class Interpreter implements Expr.Visitor<Object> {
-    @Override
-    public Object visitLiteralExpr(Expr.Literal expr) {
-        return expr.value;
+import java.util.Arrays;
+
+/**
+ * 구문 트리를 순회하며 식을 평가하는 인터프리터
+ * 재귀 호출 대신 ExprStack으로 트리를 후위 순서로 돌기 때문에, 트리가 아무리 깊어도 호출 스택이 넘치지 않는다.
+ * 값은 VM과 같이 values, numbers 두 스택에 두어 숫자 연산마다 Double 객체를 만들지 않는다.
+ * 노드는 Visitor 대신 종류 태그(Expr.kind)로 switch하여 구분하므로, 가상 호출 없이 한 루프 안에서 처리된다.
+ */
+public class Interpreter {
+    /**
+     * 이 칸의 값이 numbers 스택에 있음을 나타내는 표시
+     */
+    private static final Object NUMBER = new Object();
+
+    private final ExprStack pending = new ExprStack();
+    private Object[] values = new Object[16];
+    private double[] numbers = new double[16];
+    private int sp = 0;
+    /**
+     * 결과를 출력하고 에러를 기록할 세션
+     */
+    private final LoxSession session;
+
+    Interpreter(LoxSession session) {
+        this.session = session;
+    }
+
+    /**
+     * 식을 평가하고 결과를 화면에 출력한다.
+     * @param expression
+     */
+    void interpret(Expr expression) {
+        try {
+            Object value = evaluate(expression);
+            session.out.println(stringify(value));
+        } catch (RuntimeError error) {
+            session.runtimeError(error);
+        }
+    }
+
+    /**
+     * 평가 횟수에 따라 Interpreter나 Jit으로 컴파일한 코드로 식을 평가하고 결과를 화면에 출력한다.
+     * @param expression
+     */
+    void interpret(TieredExpr expression) {
+        try {
+            Object value = expression.evaluate(this);
+            session.out.println(stringify(value));
+        } catch (RuntimeError error) {
+            session.runtimeError(error);
+        }
+    }
+
+    /**
+     * 실행 트리를 실행하고 결과를 화면에 출력한다.
+     * @param tree
+     */
+    void interpret(ExecutionTree tree) {
+        try {
+            Object value = tree.execute();
+            session.out.println(stringify(value));
+        } catch (RuntimeError error) {
+            session.runtimeError(error);
+        }
+    }
+
+    /**
+     * 식을 평가한다. 결과가 숫자면 마지막에 한 번만 박싱한다.
+     * @param expr
+     * @return
+     */
+    Object evaluate(Expr expr) {
+        try {
+            pending.push(expr);
+            while (!pending.isEmpty()) {
+                Expr node = pending.pop();
+                if (pending.isExit()) {
+                    exit(node);
+                } else {
+                    enter(node);
+                }
+            }
+
+            return values[0] == NUMBER ? (Object) numbers[0] : values[0];
+        } finally {
+            // 에러로 중단되었어도 다음 평가에 남은 값이 섞이거나 붙잡혀 있지 않도록 비운다.
+            pending.clear();
+            Arrays.fill(values, 0, Math.max(sp, 1), null);
+            sp = 0;
+        }
+    }
+
+    /**
+     * 노드를 처음 꺼냈을 때 처리한다. 리터럴은 값을 스택에 넣고, 나머지는 자식 노드를 작업 스택에 넣는다.
+     * @param expr
+     */
+    private void enter(Expr expr) {
+        switch (expr.kind) {
+            case Expr.LITERAL:
+                push(((Expr.Literal) expr).value);
+                break;
+            case Expr.GROUPING:
+                pending.push(((Expr.Grouping) expr).expression);
+                break;
+            case Expr.UNARY:
+                pending.pushExit(expr);
+                pending.push(((Expr.Unary) expr).right);
+                break;
+            case Expr.BINARY:
+                // 왼쪽 피연산자를 먼저 평가하도록 오른쪽을 먼저 넣는다.
+                pending.pushExit(expr);
+                pending.push(((Expr.Binary) expr).right);
+                pending.push(((Expr.Binary) expr).left);
+                break;
+        }
+    }
+
+    /**
+     * 피연산자를 모두 평가한 노드의 연산을 처리한다.
+     * @param expr
+     */
+    private void exit(Expr expr) {
+        if (expr.kind == Expr.UNARY) {
+            Token operator = ((Expr.Unary) expr).operator;
+            String error = unary(operator.type);
+            if (error != null) throw new RuntimeError(operator, error);
+        } else {
+            Token operator = ((Expr.Binary) expr).operator;
+            String error = binary(operator.type);
+            if (error != null) throw new RuntimeError(operator, error);
+        }
+    }
+
+    /**
+     * 아레나에 담긴 식을 평가하고 결과를 화면에 출력한다.
+     * @param arena
+     */
+    void interpret(ExprArena arena) {
+        try {
+            Object value = evaluate(arena);
+            session.out.println(stringify(value));
+        } catch (RuntimeError error) {
+            session.runtimeError(error);
+        }
+    }
+
+    /**
+     * 파서가 만든 아레나의 식을 평가한다.
+     * 파서는 자식 노드를 먼저 만들므로 노드를 인덱스 순서대로 처리하면 후위 순서가 되어,
+     * 작업 스택 없이 배열을 앞에서부터 한 번 훑으면 된다.
+     * Token 객체는 에러를 보고할 때만 만든다.
+     * @param arena
+     * @return
+     */
+    Object evaluate(ExprArena arena) {
+        try {
+            for (int expr = 0; expr < arena.count; expr++) {
+                switch (arena.kinds[expr]) {
+                    case ExprArena.LITERAL:
+                        pushLiteral(arena, expr);
+                        break;
+                    case ExprArena.GROUPING:
+                        // 안쪽 식의 값이 이미 스택 위에 있다.
+                        break;
+                    case ExprArena.UNARY: {
+                        int operator = arena.unaryOperator(expr);
+                        String error = unary(arena.tokens.type(operator));
+                        if (error != null) throw new RuntimeError(arena.tokens.token(operator), error);
+                        break;
+                    }
+                    case ExprArena.BINARY: {
+                        int operator = arena.binaryOperator(expr);
+                        String error = binary(arena.tokens.type(operator));
+                        if (error != null) throw new RuntimeError(arena.tokens.token(operator), error);
+                        break;
+                    }
+                }
+            }
+
+            return values[0] == NUMBER ? (Object) numbers[0] : values[0];
+        } finally {
+            Arrays.fill(values, 0, Math.max(sp, 1), null);
+            sp = 0;
+        }
+    }
+
+    /**
+     * 스택 위의 값에 단항 연산자를 적용한다.
+     * @param type
+     * @return 피연산자의 타입이 맞지 않으면 에러 메시지, 아니면 null
+     */
+    private String unary(TokenType type) {
+        int top = sp - 1;
+        switch (type) {
+            case BANG:
+                values[top] = values[top] != NUMBER && !isTruthy(values[top]);
+                break;
+            case MINUS:
+                if (values[top] != NUMBER) return "Operand must be a number.";
+                numbers[top] = -numbers[top];
+                break;
+        }
+        return null;
+    }
+
+    /**
+     * 스택 위의 두 값에 이항 연산자를 적용한다.
+     * 두 피연산자를 모두 평가한 뒤에 타입을 확인하므로,
+     * 왼쪽이 숫자가 아니어도 오른쪽 피연산자의 에러가 먼저 보고된다.
+     * @param type
+     * @return 피연산자의 타입이 맞지 않으면 에러 메시지, 아니면 null
+     */
+    private String binary(TokenType type) {
+        int right = --sp;
+        int left = right - 1;
+        switch (type) {
+            case GREATER:
+                if (!areNumbers(left, right)) return "Operands must be numbers.";
+                values[left] = numbers[left] > numbers[right];
+                break;
+            case GREATER_EQUAL:
+                if (!areNumbers(left, right)) return "Operands must be numbers.";
+                values[left] = numbers[left] >= numbers[right];
+                break;
+            case LESS:
+                if (!areNumbers(left, right)) return "Operands must be numbers.";
+                values[left] = numbers[left] < numbers[right];
+                break;
+            case LESS_EQUAL:
+                if (!areNumbers(left, right)) return "Operands must be numbers.";
+                values[left] = numbers[left] <= numbers[right];
+                break;
+            case BANG_EQUAL:
+                values[left] = !isEqual(left, right);
+                break;
+            case EQUAL_EQUAL:
+                values[left] = isEqual(left, right);
+                break;
+            case PLUS:
+                if (values[left] == NUMBER && values[right] == NUMBER) {
+                    numbers[left] += numbers[right];
+                } else if (values[left] instanceof String && values[right] instanceof String) {
+                    values[left] = (String) values[left] + (String) values[right];
+                } else {
+                    return "Operands must be two numbers or two strings.";
+                }
+                break;
+            case MINUS:
+                if (!areNumbers(left, right)) return "Operands must be numbers.";
+                numbers[left] -= numbers[right];
+                break;
+            case SLASH:
+                if (!areNumbers(left, right)) return "Operands must be numbers.";
+                numbers[left] /= numbers[right];
+                break;
+            case STAR:
+                if (!areNumbers(left, right)) return "Operands must be numbers.";
+                numbers[left] *= numbers[right];
+                break;
+        }
+        values[right] = null;
+        return null;
+    }
+
+    /**
+     * 값을 스택에 넣는다. 숫자는 numbers 스택에 박싱을 풀어 넣는다.
+     * @param value
+     */
+    private void push(Object value) {
+        if (value instanceof Double) {
+            pushNumber((double) value);
+            return;
+        }
+
+        if (sp == values.length) grow();
+        values[sp++] = value;
+    }
+
+    private void pushNumber(double value) {
+        if (sp == values.length) grow();
+        values[sp] = NUMBER;
+        numbers[sp++] = value;
+    }
+
+    private void grow() {
+        values = Arrays.copyOf(values, sp * 2);
+        numbers = Arrays.copyOf(numbers, sp * 2);
+    }
+
+    /**
+     * 아레나의 리터럴 값을 스택에 넣는다. 숫자는 박싱하지 않고 numbers 스택에 바로 넣는다.
+     * @param arena
+     * @param expr
+     */
+    private void pushLiteral(ExprArena arena, int expr) {
+        switch (arena.literalTag(expr)) {
+            case ExprArena.NUMBER:
+                pushNumber(arena.literalNumber(expr));
+                break;
+            case ExprArena.STRING:
+                push(arena.literalString(expr));
+                break;
+            case ExprArena.TRUE:
+                push(true);
+                break;
+            case ExprArena.FALSE:
+                push(false);
+                break;
+            case ExprArena.COLUMN:
+                throw new IllegalStateException("Column references can only be evaluated by ColumnExpr.");
+            default:
+                push(null);
+        }
+    }
+
+    /**
+     * 두 칸의 값이 같은지 비교한다. 숫자는 Double.equals()와 같은 규칙을 따른다.
+     */
+    private boolean isEqual(int a, int b) {
+        if (values[a] == NUMBER && values[b] == NUMBER) {
+            return Double.doubleToLongBits(numbers[a]) == Double.doubleToLongBits(numbers[b]);
+        }
+        if (values[a] == NUMBER || values[b] == NUMBER) return false;
+
+        return isEqual(values[a], values[b]);
+    }
+
+    private boolean areNumbers(int left, int right) {
+        return values[left] == NUMBER && values[right] == NUMBER;
+    }
+
+    /**
+     * false와 nil만 거짓으로 취급하고, 나머지는 모두 참이다.
+     * @param object
+     * @return
+     */
+    static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+
+        return a.equals(b);
+    }
+
+    /**
+     * 값을 사용자에게 보여줄 문자열로 바꾼다.
+     * 정수인 숫자는 뒤에 붙는 ".0"을 뗀다.
+     * @param object
+     * @return
+     */
+    static String stringify(Object object) {
+        if (object == null) return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
     }
 }
@@ -0,0 +1,391 @@
+package com.binn328.lox;
+
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
+import static com.binn328.lox.ClassFileWriter.*;
+
+/**
+ * 구문 트리를 evaluate() 메소드 하나짜리 JVM 클래스로 컴파일한다.
+ * 클래스는 MethodHandles.Lookup.defineHiddenClass로 이 패키지에 정의하므로, 쓰지 않게 되면 GC가 회수할 수 있다.
+ *
+ * 문법에 변수가 없어서 모든 노드의 타입을 컴파일할 때 알 수 있다.
+ * 그래서 숫자는 double, 참/거짓은 int로 JVM 스택에 두고, 타입 검사 없이 분기 없는 코드만 만든다.
+ * 결과만 마지막에 한 번 박싱한다.
+ * 타입이 맞지 않는 노드가 있으면 Interpreter가 후위 순서로 처음 만나는 그 노드에서 에러를 내므로,
+ * 그 앞의 노드는 부수 효과가 없어 evaluate()는 같은 토큰과 메시지로 RuntimeError를 던지기만 한다.
+ */
+class Jit {
+    /**
+     * 컴파일한 식. 여러 스레드에서 동시에 불러도 된다.
+     */
+    interface Compiled {
+        Object evaluate();
+    }
+
+    /**
+     * HotSpot은 이보다 큰 메소드를 JIT 컴파일하지 않으므로(DontCompileHugeMethods), 더 큰 트리는 컴파일하지 않는다.
+     */
+    static final int MAX_CODE_SIZE = 8000;
+
+    private static final String CLASS_NAME = "com/binn328/lox/JitExpr";
+    private static final String COMPILED = "com/binn328/lox/Jit$Compiled";
+    private static final String JIT = "com/binn328/lox/Jit";
+    private static final String TOKEN = "com/binn328/lox/Token";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING_CLASS = "java/lang/String";
+
+    private static final byte NUMBER = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte STRING = 2;
+    private static final byte NIL = 3;
+
+    private final ClassFileWriter writer = new ClassFileWriter(CLASS_NAME, OBJECT, COMPILED);
+    private final ClassFileWriter.Code code = new ClassFileWriter.Code();
+    private final ExprStack pending = new ExprStack();
+    /**
+     * JVM 스택에 있는 값들의 타입
+     */
+    private byte[] types = new byte[16];
+    private int sp = 0;
+    /**
+     * 타입이 맞지 않아 에러를 내는 연산자와 메시지
+     */
+    private Token errorToken = null;
+    private String errorMessage = null;
+
+    private Jit() {
+    }
+
+    /**
+     * 식을 컴파일한다.
+     * @param expression
+     * @return 식이 너무 커서 메소드 하나에 담을 수 없으면 null
+     */
+    static Compiled compile(Expr expression) {
+        return new Jit().define(expression);
+    }
+
+    private Compiled define(Expr expression) {
+        byte[] bytes;
+        try {
+            bytes = generate(expression);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            // 상수 풀이 넘치거나 문자열 상수가 너무 길다.
+            return null;
+        }
+        if (bytes == null) return null;
+
+        try {
+            // 에러를 던지는 식만 토큰을 클래스 데이터로 넘긴다.
+            MethodHandles.Lookup lookup = errorToken == null
+                    ? MethodHandles.lookup().defineHiddenClass(bytes, true)
+                    : MethodHandles.lookup().defineHiddenClassWithClassData(bytes, errorToken, true);
+            return lookup.lookupClass().asSubclass(Compiled.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not define compiled expression.", e);
+        }
+    }
+
+    /**
+     * 클래스 파일을 만든다.
+     * @param expression
+     * @return evaluate()가 MAX_CODE_SIZE를 넘으면 null
+     */
+    private byte[] generate(Expr expression) {
+        ClassFileWriter.Code constructor = new ClassFileWriter.Code();
+        constructor.op(ALOAD_0, 1);
+        constructor.op(INVOKESPECIAL, writer.methodRef(OBJECT, "<init>", "()V"), -1);
+        constructor.op(RETURN, 0);
+        writer.method(ACC_PUBLIC, "<init>", "()V", constructor, 1);
+
+        if (body(expression)) {
+            if (code.size() > MAX_CODE_SIZE) return null;
+            box();
+            code.op(ARETURN, -1);
+            writer.method(ACC_PUBLIC, "evaluate", "()Ljava/lang/Object;", code, 1);
+        } else {
+            throwError();
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * 트리를 후위 순서로 돌며 evaluate()의 코드를 쓴다. 코드가 MAX_CODE_SIZE를 넘으면 더 쓰지 않고 멈춘다.
+     * @param expression
+     * @return 타입이 맞지 않는 노드를 만나면 false
+     */
+    private boolean body(Expr expression) {
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Expr expr = pending.pop();
+            if (pending.isExit()) {
+                if (!exit(expr)) return false;
+                continue;
+            }
+
+            switch (expr.kind) {
+                case Expr.LITERAL:
+                    literal(((Expr.Literal) expr).value);
+                    break;
+                case Expr.GROUPING:
+                    pending.push(((Expr.Grouping) expr).expression);
+                    break;
+                case Expr.UNARY:
+                    pending.pushExit(expr);
+                    pending.push(((Expr.Unary) expr).right);
+                    break;
+                case Expr.BINARY:
+                    pending.pushExit(expr);
+                    pending.push(((Expr.Binary) expr).right);
+                    pending.push(((Expr.Binary) expr).left);
+                    break;
+            }
+            if (code.size() > MAX_CODE_SIZE) return true;
+        }
+        return true;
+    }
+
+    private void literal(Object value) {
+        if (value instanceof Double) {
+            double number = (double) value;
+            if (Double.doubleToRawLongBits(number) == 0L) {
+                code.op(DCONST_0, 2);
+            } else if (number == 1.0) {
+                code.op(DCONST_1, 2);
+            } else {
+                code.op(LDC2_W, writer.doubleConstant(number), 2);
+            }
+            push(NUMBER);
+        } else if (value instanceof Boolean) {
+            code.op((boolean) value ? ICONST_1 : ICONST_0, 1);
+            push(BOOLEAN);
+        } else if (value instanceof String) {
+            code.ldc(writer.string((String) value));
+            push(STRING);
+        } else {
+            code.op(ACONST_NULL, 1);
+            push(NIL);
+        }
+    }
+
+    /**
+     * 피연산자의 코드를 모두 쓴 노드의 연산을 쓴다.
+     * @param expr
+     * @return 피연산자의 타입이 맞지 않으면 false
+     */
+    private boolean exit(Expr expr) {
+        if (expr.kind == Expr.UNARY) {
+            Token operator = ((Expr.Unary) expr).operator;
+            return unary(operator);
+        }
+        Token operator = ((Expr.Binary) expr).operator;
+        return binary(operator);
+    }
+
+    private boolean unary(Token operator) {
+        byte right = types[sp - 1];
+        switch (operator.type) {
+            case MINUS:
+                if (right != NUMBER) return fail(operator, "Operand must be a number.");
+                code.op(DNEG, 0);
+                break;
+            case BANG:
+                // 숫자와 문자열은 참, nil은 거짓이다.
+                switch (right) {
+                    case NUMBER:
+                        code.op(POP2, -2);
+                        code.op(ICONST_0, 1);
+                        break;
+                    case BOOLEAN:
+                        code.op(ICONST_1, 1);
+                        code.op(IXOR, -1);
+                        break;
+                    case STRING:
+                        code.op(POP, -1);
+                        code.op(ICONST_0, 1);
+                        break;
+                    case NIL:
+                        code.op(POP, -1);
+                        code.op(ICONST_1, 1);
+                        break;
+                }
+                types[sp - 1] = BOOLEAN;
+                break;
+        }
+        return true;
+    }
+
+    private boolean binary(Token operator) {
+        byte right = types[--sp];
+        byte left = types[sp - 1];
+        boolean numbers = left == NUMBER && right == NUMBER;
+        switch (operator.type) {
+            case GREATER:
+                return compare(operator, numbers, "greater");
+            case GREATER_EQUAL:
+                return compare(operator, numbers, "greaterEqual");
+            case LESS:
+                return compare(operator, numbers, "less");
+            case LESS_EQUAL:
+                return compare(operator, numbers, "lessEqual");
+            case BANG_EQUAL:
+                isEqual(left, right);
+                code.op(ICONST_1, 1);
+                code.op(IXOR, -1);
+                break;
+            case EQUAL_EQUAL:
+                isEqual(left, right);
+                break;
+            case PLUS:
+                if (numbers) {
+                    code.op(DADD, -2);
+                } else if (left == STRING && right == STRING) {
+                    code.op(INVOKEVIRTUAL, writer.methodRef(STRING_CLASS, "concat", "(Ljava/lang/String;)Ljava/lang/String;"), -1);
+                } else {
+                    return fail(operator, "Operands must be two numbers or two strings.");
+                }
+                break;
+            case MINUS:
+                return arithmetic(operator, numbers, DSUB);
+            case SLASH:
+                return arithmetic(operator, numbers, DDIV);
+            case STAR:
+                return arithmetic(operator, numbers, DMUL);
+        }
+        return true;
+    }
+
+    private boolean compare(Token operator, boolean numbers, String helper) {
+        if (!numbers) return fail(operator, "Operands must be numbers.");
+        code.op(INVOKESTATIC, writer.methodRef(JIT, helper, "(DD)Z"), -3);
+        types[sp - 1] = BOOLEAN;
+        return true;
+    }
+
+    private boolean arithmetic(Token operator, boolean numbers, int opcode) {
+        if (!numbers) return fail(operator, "Operands must be numbers.");
+        code.op(opcode, -2);
+        return true;
+    }
+
+    /**
+     * 두 값이 같은지 비교하는 코드를 쓴다. 타입이 다르면 피연산자를 버리고 false를 넣는다.
+     */
+    private void isEqual(byte left, byte right) {
+        if (left != right) {
+            pop(right);
+            pop(left);
+            code.op(ICONST_0, 1);
+        } else {
+            switch (left) {
+                case NUMBER:
+                    code.op(INVOKESTATIC, writer.methodRef(JIT, "isEqual", "(DD)Z"), -3);
+                    break;
+                case BOOLEAN:
+                    // a == b는 !(a ^ b)이다.
+                    code.op(IXOR, -1);
+                    code.op(ICONST_1, 1);
+                    code.op(IXOR, -1);
+                    break;
+                case STRING:
+                    code.op(INVOKEVIRTUAL, writer.methodRef(STRING_CLASS, "equals", "(Ljava/lang/Object;)Z"), -1);
+                    break;
+                case NIL:
+                    code.op(POP, -1);
+                    code.op(POP, -1);
+                    code.op(ICONST_1, 1);
+                    break;
+            }
+        }
+        types[sp - 1] = BOOLEAN;
+    }
+
+    private void pop(byte type) {
+        if (type == NUMBER) {
+            code.op(POP2, -2);
+        } else {
+            code.op(POP, -1);
+        }
+    }
+
+    /**
+     * 스택에 남은 결과를 Interpreter와 같은 객체로 박싱한다.
+     */
+    private void box() {
+        if (types[0] == NUMBER) {
+            code.op(INVOKESTATIC, writer.methodRef("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"), -1);
+        } else if (types[0] == BOOLEAN) {
+            code.op(INVOKESTATIC, writer.methodRef("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;"), 0);
+        }
+    }
+
+    private boolean fail(Token operator, String message) {
+        errorToken = operator;
+        errorMessage = message;
+        return false;
+    }
+
+    /**
+     * 에러를 던지기만 하는 evaluate()를 쓴다. 토큰은 클래스 데이터로 넘겨 정적 필드에 담아둔다.
+     */
+    private void throwError() {
+        writer.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "TOKEN", "L" + TOKEN + ";");
+        int tokenField = writer.fieldRef(CLASS_NAME, "TOKEN", "L" + TOKEN + ";");
+
+        ClassFileWriter.Code initializer = new ClassFileWriter.Code();
+        initializer.op(INVOKESTATIC, writer.methodRef("java/lang/invoke/MethodHandles", "lookup",
+                "()Ljava/lang/invoke/MethodHandles$Lookup;"), 1);
+        initializer.ldc(writer.string("_"));
+        initializer.ldc(writer.classRef(TOKEN));
+        initializer.op(INVOKESTATIC, writer.methodRef("java/lang/invoke/MethodHandles", "classData",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;"), -2);
+        initializer.op(CHECKCAST, writer.classRef(TOKEN), 0);
+        initializer.op(PUTSTATIC, tokenField, -1);
+        initializer.op(RETURN, 0);
+        writer.method(ACC_STATIC, "<clinit>", "()V", initializer, 0);
+
+        ClassFileWriter.Code thrower = new ClassFileWriter.Code();
+        thrower.op(GETSTATIC, tokenField, 1);
+        thrower.ldc(writer.string(errorMessage));
+        thrower.op(INVOKESTATIC, writer.methodRef(JIT, "error",
+                "(L" + TOKEN + ";Ljava/lang/String;)Lcom/binn328/lox/RuntimeError;"), -1);
+        thrower.op(ATHROW, -1);
+        writer.method(ACC_PUBLIC, "evaluate", "()Ljava/lang/Object;", thrower, 1);
+    }
+
+    private void push(byte type) {
+        if (sp == types.length) types = Arrays.copyOf(types, sp * 2);
+        types[sp++] = type;
+    }
+
+    // 컴파일한 코드가 부르는 함수들
+
+    static boolean greater(double left, double right) {
+        return left > right;
+    }
+
+    static boolean greaterEqual(double left, double right) {
+        return left >= right;
+    }
+
+    static boolean less(double left, double right) {
+        return left < right;
+    }
+
+    static boolean lessEqual(double left, double right) {
+        return left <= right;
+    }
+
+    /**
+     * Double.equals()와 같은 규칙으로 비교한다.
+     */
+    static boolean isEqual(double left, double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    static RuntimeError error(Token token, String message) {
+        return new RuntimeError(token, message);
+    }
+}
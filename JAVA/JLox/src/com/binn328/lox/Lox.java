@@ -4,40 +4,293 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.Arrays;
 
 
 public class Lox {
     /**
-     * 에러가 난 코드를 더 이상 실행하지 않기 위해 사용하는 필드이다.
+     * true면 트리 순회 인터프리터 대신 바이트코드 VM으로 실행한다.
      */
-    static boolean hadError = false;
+    static boolean useVm = false;
+    /**
+     * true면 스크립트 파일을 한 번에 읽지 않고 스트리밍 스캐너로 조금씩 읽는다.
+     */
+    static boolean useStream = false;
+    /**
+     * true면 스크립트 파일을 메모리 맵으로 읽어 복사 없이 스캔한다.
+     */
+    static boolean useMmap = false;
+    /**
+     * true면 큰 소스 코드를 여러 조각으로 나누어 동시에 스캔한다.
+     */
+    static boolean useParallel = false;
+    /**
+     * true면 평가하기 전에 Optimizer로 식을 단순하게 만든다.
+     */
+    static boolean useOptimizer = false;
+    /**
+     * true면 식을 평가하는 대신 구문 트리를 출력한다.
+     */
+    static boolean printAst = false;
+    /**
+     * true면 구문 트리를 Expr 객체 대신 ExprArena의 배열에 만든다.
+     * 토큰을 모두 스캔해 두어야 하고, 트리 순회 인터프리터와 --print-ast만 지원한다.
+     */
+    static boolean useArena = false;
+    /**
+     * --cache로 켜면 같은 소스를 다시 실행할 때 스캔과 파싱을 건너뛰게 해주는 캐시. 꺼져 있으면 null이다.
+     */
+    static ParseCache cache = null;
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+    /**
+     * --jit으로 켜면 캐시에 담긴 식을 이만큼 평가한 뒤 Jit으로 컴파일한다. 꺼져 있으면 -1이다.
+     * 같은 식을 여러 번 평가해야 의미가 있으므로 캐시가 꺼져 있으면 함께 켠다.
+     */
+    static int jitThreshold = -1;
+    /**
+     * true면 캐시에 담긴 식을 ExecutionTree로 실행한다. 노드가 실행할 때마다 특수화되므로 캐시가 꺼져 있으면 함께 켠다.
+     */
+    static boolean useSpecializer = false;
+    /**
+     * --metrics로 켜면 실행마다 단계별 시간과 크기를 기록하는 통계. 꺼져 있으면 null이다.
+     */
+    static Metrics metrics = null;
+    /**
+     * --server로 받은 주소. 주어지면 스크립트를 실행하는 대신 LoxServer를 띄운다.
+     */
+    private static String serverAddress = null;
+    /**
+     * --connect로 받은 주소. 주어지면 스크립트를 직접 실행하지 않고 그 주소의 서버로 보낸다.
+     */
+    private static String connectAddress = null;
+    /**
+     * --batch로 켜면 남은 인자의 파일들을 BatchRunner로 한꺼번에 실행한다.
+     */
+    private static boolean useBatch = false;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        // 실행 방식을 고르는 옵션을 먼저 처리한다.
+        int argIndex = 0;
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            switch (args[argIndex]) {
+                case "--vm":
+                    useVm = true;
+                    break;
+                case "--stream":
+                    useStream = true;
+                    break;
+                case "--mmap":
+                    useMmap = true;
+                    break;
+                case "--parallel":
+                    useParallel = true;
+                    break;
+                case "--optimize":
+                    useOptimizer = true;
+                    break;
+                case "--print-ast":
+                    printAst = true;
+                    break;
+                case "--arena":
+                    useArena = true;
+                    break;
+                case "--metrics":
+                    // 실행마다 통계를 JSON 한 줄로 세션의 에러 출력에 쓰고, JMX로도 보여준다.
+                    metrics = new Metrics(true).register();
+                    break;
+                case "--cache":
+                    cache = new ParseCache(DEFAULT_CACHE_SIZE);
+                    break;
+                case "--jit":
+                    jitThreshold = TieredExpr.DEFAULT_THRESHOLD;
+                    if (cache == null) cache = new ParseCache(DEFAULT_CACHE_SIZE);
+                    break;
+                case "--specialize":
+                    useSpecializer = true;
+                    if (cache == null) cache = new ParseCache(DEFAULT_CACHE_SIZE);
+                    break;
+                case "--batch":
+                    // 옵션 뒤의 인자는 모두 실행할 파일이나 디렉터리이다. 옵션 검사를 마친 뒤에 실행한다.
+                    useBatch = true;
+                    break;
+                default:
+                    if (args[argIndex].startsWith("--server=")) {
+                        serverAddress = args[argIndex].substring("--server=".length());
+                        break;
+                    }
+                    if (args[argIndex].startsWith("--connect=")) {
+                        connectAddress = args[argIndex].substring("--connect=".length());
+                        break;
+                    }
+                    if (args[argIndex].startsWith("--jit=")) {
+                        try {
+                            jitThreshold = Integer.parseInt(args[argIndex].substring("--jit=".length()));
+                        } catch (NumberFormatException e) {
+                            usage();
+                        }
+                        if (jitThreshold < 0) usage();
+                        if (cache == null) cache = new ParseCache(DEFAULT_CACHE_SIZE);
+                        break;
+                    }
+                    if (!args[argIndex].startsWith("--cache=")) usage();
+                    try {
+                        cache = new ParseCache(Integer.parseInt(args[argIndex].substring("--cache=".length())));
+                    } catch (IllegalArgumentException e) {
+                        usage();
+                    }
+            }
+            argIndex++;
+        }
+
+        if (useArena && (useVm || useOptimizer || useStream)) usage();
+        if (useParallel && useStream) usage();
+        if (jitThreshold >= 0 && (useVm || useArena || useStream)) usage();
+        if (useSpecializer && (useVm || useArena || useStream || jitThreshold >= 0)) usage();
+        if (useBatch && (useStream || useMmap || useParallel || printAst)) usage();
+
+        if (useBatch) {
+            if (argIndex == args.length || serverAddress != null || connectAddress != null) usage();
+            int exitCode = BatchRunner.runAndReport(BatchRunner.collect(Arrays.copyOfRange(args, argIndex, args.length)));
+            if (cache != null) System.err.println(cache);
+            System.exit(exitCode);
+        }
+
+        if (serverAddress != null) {
+            // 소스는 소켓으로 받으므로 파일을 읽는 방식을 고르는 옵션은 쓸 수 없다.
+            if (argIndex != args.length || connectAddress != null || useStream || useMmap || useParallel) usage();
+            LoxServer.serve(serverAddress);
+            return;
+        }
+        if (connectAddress != null) {
+            if (args.length - argIndex > 1) usage();
+            connect(connectAddress, argIndex < args.length ? args[argIndex] : null);
+            return;
+        }
+
+        if (argIndex < args.length && args[argIndex].equals("compile")) {
+            int count = args.length - argIndex;
+            if (count < 2 || count > 3) usage();
+            compile(args[argIndex + 1], count == 3 ? args[argIndex + 2] : null);
+            return;
+        }
+
+        if (args.length - argIndex > 1) {
+            usage();
+        } else if (args.length - argIndex == 1) {
+            runFile(args[argIndex]);
         } else {
             runPrompt();
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm | --jit[=<invocations>] | --specialize] [--optimize] [--print-ast] [--cache[=<entries>]] [--metrics] [--stream | --mmap [--parallel]] [script]");
+        System.out.println("       jlox --arena [--print-ast] [--mmap] [--parallel] [--metrics] [script]");
+        System.out.println("       jlox [--vm | --jit[=<invocations>] | --specialize] [--optimize] [--arena] [--cache[=<entries>]] [--metrics] --batch <file or directory>...");
+        System.out.println("       jlox [--vm | --jit[=<invocations>] | --specialize] [--optimize] [--print-ast] [--arena] [--cache[=<entries>]] [--metrics] --server=<port | socket path>");
+        System.out.println("       jlox --connect=<port | socket path> [script]");
+        System.out.println("       jlox [--optimize] compile <script> [output]");
+        System.exit(64);
+    }
+
+    /**
+     * 스크립트 파일을 서버로 보내 실행하고 그 결과와 종료코드를 그대로 낸다.
+     * @param address 서버의 포트 번호나 소켓 파일 경로
+     * @param path 스크립트 파일의 경로. null이면 표준 입력을 끝까지 읽어 보낸다.
+     * @throws IOException
+     */
+    private static void connect(String address, String path) throws IOException {
+        byte[] bytes = path == null ? System.in.readAllBytes() : Files.readAllBytes(Paths.get(path));
+        int exitCode = LoxServer.submit(address, new String(bytes, Charset.defaultCharset()), System.out, System.err);
+        if (exitCode != 0) System.exit(exitCode);
+    }
+
     /**
      * 명령줄에서 jlox를 기동할 때, 파일 경로를 지정하여 스크립트 파일을 실행한다.
      * @param path 스크립트 파일의 경로
      * @throws IOException
      */
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        LoxSession session = new LoxSession();
+
+        if (LoxcFile.isLoxc(Paths.get(path))) {
+            // compile로 미리 파싱해 둔 파일은 스캔과 파싱 없이 구문 트리를 바로 읽는다.
+            if (useArena || useStream) usage();
+            runCompiled(session, path);
+        } else if (useStream) {
+            // 파일 전체를 메모리에 올리지 않고, 파서가 토큰을 요구할 때마다 조금씩 읽는다.
+            try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(path)),
+                    Charset.defaultCharset())) {
+                begin(session);
+                run(session, new Parser(session, new Scanner(session, reader)));
+                end(session);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else if (useMmap) {
+            // readAllBytes()와 new String()의 두 번의 복사 없이, 맵 위에서 바로 스캔한다.
+            run(session, MappedSource.map(Paths.get(path), Charset.defaultCharset()));
+        } else {
+            byte[] bytes = Files.readAllBytes(Paths.get(path));
+            run(session, new String(bytes, Charset.defaultCharset()));
+        }
 
         // 종료코드로 에러를 식별한다.
-        if (hadError) System.exit(65);
+        int exitCode = exitCode(session);
+        if (exitCode != 0) System.exit(exitCode);
+    }
+
+    /**
+     * .loxc 파일에서 구문 트리를 읽어 실행한다.
+     * 소스를 실행할 때와 같이 --vm, --jit, --specialize, --print-ast를 따른다.
+     * 토큰이 남아 있지 않으므로 --arena로는 실행할 수 없다.
+     * @param session
+     * @param path .loxc 파일의 경로
+     */
+    private static void runCompiled(LoxSession session, String path) {
+        begin(session);
+        LoxcFile.Script script;
+        try {
+            script = LoxcFile.read(Paths.get(path), useMmap);
+        } catch (IOException e) {
+            System.err.println("Could not load " + path + ": " + e.getMessage());
+            System.exit(66);
+            return;
+        }
+
+        Expr expression = script.expression;
+        if (useOptimizer && !script.optimized) expression = new Optimizer().optimize(expression);
+        if (session.metrics != null) session.metrics.parsed(expression);
+        // 캐시를 거치지 않지만, 소스를 실행할 때와 같은 방식으로 평가한다.
+        execute(session, new ParseCache.Entry(expression));
+        end(session);
+    }
+
+    /**
+     * 스크립트 파일을 파싱하여 .loxc 파일로 저장한다. --optimize가 켜져 있으면 최적화한 트리를 저장한다.
+     * @param path 스크립트 파일의 경로
+     * @param output 저장할 경로. null이면 스크립트 파일의 확장자를 .loxc로 바꾼 경로
+     * @throws IOException
+     */
+    private static void compile(String path, String output) throws IOException {
+        LoxSession session = new LoxSession();
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        Expr expression = parse(session, new Parser(session, scan(session, new String(bytes, Charset.defaultCharset()))));
+        if (expression == null) System.exit(65);
+
+        if (output == null) {
+            output = (path.endsWith(".lox") ? path.substring(0, path.length() - ".lox".length()) : path)
+                    + LoxcFile.EXTENSION;
+        }
+        LoxcFile.write(Paths.get(output), expression, useOptimizer);
     }
 
     /**
@@ -47,58 +300,200 @@ public class Lox {
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
+        LoxSession session = new LoxSession();
 
         for(;;) {
             System.out.println("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
+            run(session, line);
             // 대화형에서는 발생한 오류 플래그를 초기화시켜주어야 한다.
-            hadError = false;
+            session.hadError = false;
+            session.diagnostics.clear();
         }
     }
 
     /**
-     * 스캐너가 내놓을 토큰을 눈으로 확인할 수 있도록 화면에 출력한다.
+     * 소스 코드를 스캔하고 파싱한 뒤, 식을 평가하여 결과를 세션에 출력한다.
+     * @param session 에러를 기록하고 결과를 출력할 세션
      * @param source
      */
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
+    static void run(LoxSession session, CharSequence source) {
+        begin(session);
+        runSource(session, source);
+        end(session);
+    }
+
+    private static void runSource(LoxSession session, CharSequence source) {
+        if (cache == null || useArena) {
+            run(session, new Parser(session, scan(session, source)));
+            return;
+        }
+
+        // 캐시에 있으면 스캔과 파싱을 건너뛴다. 구문 에러가 난 소스는 담지 않으므로 매번 에러가 보고된다.
+        ParseCache.Key key = cache.key(source, useOptimizer);
+        ParseCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            Expr expression = parse(session, new Parser(session, scan(session, source)));
+            if (expression == null) return;
+            entry = cache.put(key, expression);
+        } else if (session.metrics != null) {
+            session.metrics.cached(entry.expression);
+        }
+
+        execute(session, entry);
+    }
+
+    /**
+     * 캐시 항목의 식을 켜진 옵션에 맞는 방식으로 평가한다. 청크, Jit으로 컴파일한 코드, 실행 트리는 항목에 남겨 다시 쓴다.
+     * @param session
+     * @param entry
+     */
+    private static void execute(LoxSession session, ParseCache.Entry entry) {
+        if (useVm && !printAst) {
+            new VM(session).interpret(entry.chunk());
+            if (session.metrics != null) session.metrics.executed();
+        } else if (jitThreshold >= 0 && !printAst) {
+            new Interpreter(session).interpret(entry.tiered(jitThreshold));
+            if (session.metrics != null) session.metrics.executed();
+        } else if (useSpecializer && !printAst && entry.tree() != null) {
+            new Interpreter(session).interpret(entry.tree());
+            if (session.metrics != null) session.metrics.executed();
+        } else {
+            execute(session, entry.expression);
+        }
+    }
+
+    /**
+     * --metrics가 켜져 있으면 이번 실행의 통계 기록을 시작한다.
+     * @param session
+     */
+    private static void begin(LoxSession session) {
+        if (metrics != null) session.metrics = metrics.begin();
+    }
+
+    /**
+     * --metrics가 켜져 있으면 이번 실행의 통계를 누계에 더하고 출력한다.
+     * @param session
+     */
+    private static void end(LoxSession session) {
+        if (session.metrics == null) return;
+        metrics.end(session.metrics, session.err);
+        session.metrics = null;
+    }
+
+    /**
+     * 소스 코드를 모두 스캔한다. --parallel이 켜져 있으면 ParallelScanner로 나누어 스캔한다.
+     * @param session
+     * @param source
+     * @return
+     */
+    private static TokenBuffer scan(LoxSession session, CharSequence source) {
+        TokenBuffer tokens = useParallel
+                ? ParallelScanner.scan(session, source)
+                : new Scanner(session, source).scanBuffer();
+        if (session.metrics != null) session.metrics.scanned(tokens);
+        return tokens;
+    }
+
+    /**
+     * 파서가 만든 식을 평가하여 결과를 세션에 출력한다.
+     * @param session
+     * @param parser
+     */
+    private static void run(LoxSession session, Parser parser) {
+        if (useArena) {
+            runArena(session, parser);
+            return;
+        }
+
+        Expr expression = parse(session, parser);
+        if (expression != null) execute(session, expression);
+    }
+
+    /**
+     * 식을 파싱하고, 켜져 있으면 최적화한다.
+     * @param session
+     * @param parser
+     * @return 구문 에러가 발생하면 null
+     */
+    private static Expr parse(LoxSession session, Parser parser) {
         Expr expression = parser.parse();
 
         // 구문 에러가 발생하면 멈춘다.
-        if (hadError) return;
+        if (session.hadError) return null;
 
-        System.out.println(new AstPrinter().print(expression));
+        if (useOptimizer) expression = new Optimizer().optimize(expression);
+        if (session.metrics != null) session.metrics.parsed(expression);
+        return expression;
     }
 
     /**
-     * 사용자에게 에러가 발생했음을 알리는 함수이다.
-     * @param line 에러가 발생한 줄 번호이다.
-     * @param message 에러가 발생한 원인에 대한 메시지이다.
+     * 식을 평가하거나 구문 트리를 출력한다.
+     * @param session
+     * @param expression
      */
-    static void error(int line, String message) {
-        report(line, "", message);
+    private static void execute(LoxSession session, Expr expression) {
+        if (printAst) {
+            printAst(session, expression);
+        } else if (useVm) {
+            new VM(session).interpret(new Compiler().compile(expression));
+        } else {
+            new Interpreter(session).interpret(expression);
+        }
+        if (session.metrics != null) session.metrics.executed();
     }
 
     /**
-     * error 함수의 helper 함수이다.
-     * @param line 에러가 발생한 줄 번호이다..
-     * @param where 에러가 발생한 부분을 나타낸다.
-     * @param message 에러가 발생한 원인에 대한 메시지이다.
+     * 식을 ExprArena에 파싱하여 평가하거나 출력한다.
+     * @param session
+     * @param parser
      */
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
-    }
+    private static void runArena(LoxSession session, Parser parser) {
+        ExprArena arena = parser.parseArena();
+
+        if (session.hadError) return;
+        if (session.metrics != null) session.metrics.parsed(arena);
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
+        if (printAst) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(session.out, Charset.defaultCharset()));
+            try {
+                new AstPrinter().print(arena, writer);
+                writer.write(System.lineSeparator());
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            new Interpreter(session).interpret(arena);
         }
+        if (session.metrics != null) session.metrics.executed();
+    }
+
+    /**
+     * 구문 트리를 문자열로 모으지 않고 세션의 출력으로 바로 흘려보낸다.
+     * @param session
+     * @param expression
+     */
+    private static void printAst(LoxSession session, Expr expression) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(session.out, Charset.defaultCharset()));
+        try {
+            new AstPrinter().print(expression, writer);
+            writer.write(System.lineSeparator());
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 세션의 에러 상태를 종료코드로 바꾼다.
+     * @param session
+     * @return 구문 에러는 65, 실행 중 에러는 70, 에러가 없으면 0
+     */
+    static int exitCode(LoxSession session) {
+        if (session.hadError) return 65;
+        if (session.hadRuntimeError) return 70;
+        return 0;
     }
 }
@@ -0,0 +1,186 @@
+package com.binn328.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 한 번 띄운 JVM에서 여러 스크립트를 받아 실행하는 서버
+ * 프로세스를 스크립트마다 새로 띄우지 않으므로 JVM 기동 비용을 한 번만 내고,
+ * JIT가 컴파일해 둔 Scanner, Parser, Interpreter를 모든 요청이 같이 쓴다.
+ * 주소가 숫자면 127.0.0.1의 TCP 포트, 아니면 유닉스 도메인 소켓 파일 경로로 본다.
+ *
+ * 연결 하나에서 요청을 여러 번 보낼 수 있고, 클라이언트가 연결을 닫으면 끝난다.
+ * 정수는 모두 빅 엔디언 4바이트이고 문자열은 UTF-8이다.
+ * 요청: 소스 길이, 소스
+ * 응답: 종료코드, 출력 길이, 출력, 에러 메시지 길이, 에러 메시지
+ */
+class LoxServer {
+    /**
+     * 요청 하나로 받을 수 있는 가장 큰 소스 크기
+     */
+    static final int MAX_REQUEST_SIZE = 256 << 20;
+
+    /**
+     * 서버를 띄우고 연결을 받는다. 연결마다 스레드 하나가 요청을 차례로 처리한다.
+     * 요청마다 세션을 새로 만들므로 클라이언트끼리 출력과 에러 상태가 섞이지 않는다.
+     * 실행 방식은 Lox의 옵션을 따른다.
+     * @param address 포트 번호나 소켓 파일 경로
+     * @throws IOException
+     */
+    static void serve(String address) throws IOException {
+        SocketAddress socketAddress = socketAddress(address);
+        ServerSocketChannel server = socketAddress instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        server.bind(socketAddress);
+        if (socketAddress instanceof UnixDomainSocketAddress) {
+            // 소켓 파일은 서버를 닫아도 남으므로 종료할 때 지운다.
+            Path path = ((UnixDomainSocketAddress) socketAddress).getPath();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ignored) {
+                    // 종료 중이므로 알릴 곳이 없다.
+                }
+            }));
+        }
+        System.err.println("Listening on " + server.getLocalAddress());
+
+        ExecutorService clients = Executors.newCachedThreadPool();
+        try {
+            for (;;) {
+                SocketChannel client = server.accept();
+                clients.execute(() -> handle(client));
+            }
+        } finally {
+            clients.shutdown();
+            server.close();
+        }
+    }
+
+    /**
+     * 클라이언트 하나의 요청을 연결이 닫힐 때까지 처리한다.
+     * @param client
+     */
+    private static void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+
+            for (;;) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (length < 0 || length > MAX_REQUEST_SIZE) {
+                    throw new IOException("Bad request length " + length + ".");
+                }
+                byte[] source = new byte[length];
+                in.readFully(source);
+
+                BatchRunner.Result result;
+                try {
+                    result = run(new String(source, StandardCharsets.UTF_8));
+                } catch (RuntimeException | Error e) {
+                    // 요청 하나가 실패해도 연결은 닫지 않고, 파일 하나를 실행할 때처럼 종료코드와 메시지를 돌려준다.
+                    result = new BatchRunner.Result(null, "", "Failed to run request: " + e + System.lineSeparator(), 70);
+                }
+                out.writeInt(result.exitCode);
+                writeString(out, result.output);
+                writeString(out, result.diagnostics);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Client " + client + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 소스를 새 세션에서 실행하고 출력과 에러 메시지를 모은다.
+     * @param source
+     * @return
+     */
+    static BatchRunner.Result run(String source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        LoxSession session = new LoxSession(new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        Lox.run(session, source);
+
+        return new BatchRunner.Result(null, out.toString(StandardCharsets.UTF_8),
+                err.toString(StandardCharsets.UTF_8), Lox.exitCode(session));
+    }
+
+    /**
+     * 서버에 소스를 보내 실행하고, 결과를 out과 err에 출력한다.
+     * @param address 포트 번호나 소켓 파일 경로
+     * @param source
+     * @param out
+     * @param err
+     * @return 서버에서 실행한 결과의 종료코드
+     * @throws IOException
+     */
+    static int submit(String address, String source, PrintStream out, PrintStream err) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(socketAddress(address))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            writeString(request, source);
+            request.flush();
+
+            int exitCode = in.readInt();
+            out.print(readString(in));
+            err.print(readString(in));
+            return exitCode;
+        }
+    }
+
+    /**
+     * 주소 문자열을 소켓 주소로 바꾼다.
+     * @param address 포트 번호면 127.0.0.1의 TCP 포트, 아니면 유닉스 도메인 소켓 파일 경로
+     * @return
+     */
+    static SocketAddress socketAddress(String address) {
+        try {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        } catch (NumberFormatException e) {
+            return UnixDomainSocketAddress.of(address);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Bad response length " + length + ".");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package com.binn328.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 스크립트를 실행하는 동안의 에러 상태와 출력 대상을 담는다.
+ * Scanner, Parser, Interpreter는 전달받은 세션에만 에러를 기록하므로,
+ * 세션을 따로 만들면 여러 스크립트를 잠금 없이 동시에 실행해도 에러 상태가 섞이지 않는다.
+ * 세션 하나는 한 번에 한 스레드에서만 쓴다.
+ */
+class LoxSession {
+    /**
+     * 실행 결과를 출력하는 곳
+     */
+    final PrintStream out;
+    /**
+     * 에러를 출력하는 곳
+     */
+    final PrintStream err;
+    /**
+     * 에러가 난 코드를 더 이상 실행하지 않기 위해 사용하는 필드이다.
+     */
+    boolean hadError = false;
+    /**
+     * 실행 중에 에러가 났는지 기록하는 필드이다.
+     */
+    boolean hadRuntimeError = false;
+    /**
+     * 이 세션에서 스캔한 식별자와 문자열 리터럴을 담는 심볼 테이블
+     */
+    final SymbolTable symbols = new SymbolTable();
+    /**
+     * 스캔과 파싱 중에 보고된 에러들. 보고한 순서대로 쌓인다.
+     */
+    final List<Diagnostic> diagnostics = new ArrayList<>();
+    /**
+     * --metrics가 켜져 있으면 지금 실행의 통계. 꺼져 있으면 null이다.
+     */
+    Metrics.Run metrics = null;
+
+    LoxSession(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * 표준 출력과 표준 에러를 쓰는 세션을 만든다.
+     */
+    LoxSession() {
+        this(System.out, System.err);
+    }
+
+    /**
+     * 사용자에게 에러가 발생했음을 알리는 함수이다.
+     * @param line 에러가 발생한 줄 번호이다.
+     * @param message 에러가 발생한 원인에 대한 메시지이다.
+     */
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme() + "'", message);
+        }
+    }
+
+    /**
+     * 실행 중에 발생한 에러를 사용자에게 알린다.
+     * @param error 발생한 에러
+     */
+    void runtimeError(RuntimeError error) {
+        err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        hadRuntimeError = true;
+    }
+
+    /**
+     * error 함수의 helper 함수이다.
+     * @param line 에러가 발생한 줄 번호이다..
+     * @param where 에러가 발생한 부분을 나타낸다.
+     * @param message 에러가 발생한 원인에 대한 메시지이다.
+     */
+    private void report(int line, String where, String message) {
+        report(new Diagnostic(line, where, message));
+    }
+
+    /**
+     * 에러를 기록하고 사용자에게 알린다.
+     * 다른 세션에서 모아 둔 에러를 이 세션으로 옮길 때도 쓴다.
+     * @param diagnostic
+     */
+    void report(Diagnostic diagnostic) {
+        diagnostics.add(diagnostic);
+        err.println(diagnostic);
+        hadError = true;
+    }
+}
@@ -0,0 +1,420 @@
+package com.binn328.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 파싱한 구문 트리를 저장하는 .loxc 바이너리 파일
+ * 미리 컴파일해 둔 파일을 읽으면 스캔과 파싱 없이 바로 실행할 수 있다.
+ *
+ * 고정 길이 정수는 빅 엔디언이고, varint는 7비트씩 끊어 아래쪽부터 쓰는 부호 없는 가변 길이 정수이다.
+ * 헤더:   "LOXC", 버전(u16), 플래그(u16, 0번 비트는 Optimizer 적용 여부)
+ * 상수:   개수(varint), 상수마다 태그(u8)와 값. 태그 0은 숫자(f64), 1은 문자열(varint 길이 + UTF-8)
+ * 연산자: 개수(varint), 서로 다른 연산자마다 TokenType(u8)과 렉심의 상수 번호(varint)
+ * 노드:   개수(varint), 바이트 수(varint), 후위 순서로 노드마다 (피연산자 << 2 | 종류)(varint)
+ *         리터럴의 피연산자는 0이 nil, 1이 false, 2가 true이고, 상수 k는 k + 3이다.
+ *         단항과 이항 연산은 연산자 번호, 괄호는 0이다.
+ * 줄 번호: 단항과 이항 연산 노드마다 노드 순서대로, 앞 연산자와의 줄 번호 차이(zigzag varint)
+ * 자식 노드는 항상 부모보다 먼저 나오므로 스택 하나로 트리를 다시 만들고, 마지막 노드가 루트이다.
+ */
+class LoxcFile {
+    static final String EXTENSION = ".loxc";
+    private static final int MAGIC = 0x4C4F5843;
+    private static final short VERSION = 1;
+    private static final short OPTIMIZED = 1;
+
+    private static final byte NUMBER_CONSTANT = 0;
+    private static final byte STRING_CONSTANT = 1;
+
+    /**
+     * 리터럴의 피연산자 중 상수가 아닌 값
+     */
+    private static final int NIL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int FIRST_CONSTANT = 3;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    /**
+     * 읽어 들인 파일의 내용
+     */
+    static class Script {
+        final Expr expression;
+        /**
+         * 컴파일할 때 Optimizer를 적용했는지
+         */
+        final boolean optimized;
+
+        Script(Expr expression, boolean optimized) {
+            this.expression = expression;
+            this.optimized = optimized;
+        }
+    }
+
+    /**
+     * 파일이 .loxc 형식인지 맨 앞의 매직 넘버로 확인한다.
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    static boolean isLoxc(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // 네 바이트를 모두 읽거나 파일이 끝날 때까지 읽는다.
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * 식을 .loxc 형식으로 저장한다.
+     * @param path
+     * @param expression
+     * @param optimized expression에 Optimizer를 적용했는지
+     * @throws IOException
+     */
+    static void write(Path path, Expr expression, boolean optimized) throws IOException {
+        Files.write(path, encode(expression, optimized));
+    }
+
+    /**
+     * .loxc 파일을 읽는다. 파일 전체를 한 번에 읽거나, map이 true면 메모리 맵으로 연다.
+     * @param path
+     * @param map
+     * @return
+     * @throws IOException 형식이 맞지 않거나 지원하지 않는 버전이면 발생한다.
+     */
+    static Script read(Path path, boolean map) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File is too large.");
+
+            ByteBuffer buffer;
+            if (map) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // 파일이 끝날 때까지 읽는다.
+                }
+                buffer.flip();
+            }
+            return decode(buffer);
+        }
+    }
+
+    /**
+     * 식을 .loxc 형식의 바이트 배열로 바꾼다.
+     * @param expression
+     * @param optimized
+     * @return
+     */
+    static byte[] encode(Expr expression, boolean optimized) {
+        Encoder encoder = new Encoder();
+        encoder.encode(expression);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + encoder.nodes.size() + encoder.lines.size());
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putShort(VERSION).putShort(optimized ? OPTIMIZED : 0);
+        out.write(header.array(), 0, 8);
+
+        writeVarint(out, encoder.constants.size());
+        for (Object constant : encoder.constants) {
+            if (constant instanceof Double) {
+                out.write(NUMBER_CONSTANT);
+                out.write(ByteBuffer.allocate(8).putDouble((Double) constant).array(), 0, 8);
+            } else {
+                byte[] bytes = ((String) constant).getBytes(StandardCharsets.UTF_8);
+                out.write(STRING_CONSTANT);
+                writeVarint(out, bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+        }
+
+        writeVarint(out, encoder.operators.size());
+        for (Token operator : encoder.operators) {
+            out.write(operator.type.ordinal());
+            writeVarint(out, encoder.constant(operator.lexeme()));
+        }
+
+        writeVarint(out, encoder.nodeCount);
+        writeVarint(out, encoder.nodes.size());
+        out.writeBytes(encoder.nodes.toByteArray());
+        out.writeBytes(encoder.lines.toByteArray());
+        return out.toByteArray();
+    }
+
+    /**
+     * 구문 트리를 재귀 호출 없이 후위 순서로 순회하며 노드와 줄 번호, 상수, 연산자 표를 만든다.
+     */
+    private static class Encoder {
+        final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndexes = new HashMap<>();
+        /**
+         * 서로 다른 연산자. 같은 종류와 렉심의 연산자 토큰은 줄 번호만 다르므로 한 번만 담는다.
+         */
+        final List<Token> operators = new ArrayList<>();
+        private final Map<String, Integer> operatorIndexes = new HashMap<>();
+        final ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        int nodeCount = 0;
+        private int line = 0;
+
+        void encode(Expr root) {
+            ExprStack pending = new ExprStack();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Expr expr = pending.pop();
+                if (pending.isExit()) {
+                    exit(expr);
+                    continue;
+                }
+
+                pending.pushExit(expr);
+                switch (expr.kind) {
+                    case Expr.BINARY:
+                        pending.push(((Expr.Binary) expr).right);
+                        pending.push(((Expr.Binary) expr).left);
+                        break;
+                    case Expr.GROUPING:
+                        pending.push(((Expr.Grouping) expr).expression);
+                        break;
+                    case Expr.UNARY:
+                        pending.push(((Expr.Unary) expr).right);
+                        break;
+                }
+            }
+        }
+
+        private void exit(Expr expr) {
+            switch (expr.kind) {
+                case Expr.BINARY:
+                    node(Expr.BINARY, operator(((Expr.Binary) expr).operator));
+                    break;
+                case Expr.GROUPING:
+                    node(Expr.GROUPING, 0);
+                    break;
+                case Expr.LITERAL:
+                    node(Expr.LITERAL, literal(((Expr.Literal) expr).value));
+                    break;
+                case Expr.UNARY:
+                    node(Expr.UNARY, operator(((Expr.Unary) expr).operator));
+                    break;
+            }
+        }
+
+        private int literal(Object value) {
+            if (value == null) return NIL;
+            if (value instanceof Boolean) return (Boolean) value ? TRUE : FALSE;
+            return FIRST_CONSTANT + constant(value);
+        }
+
+        /**
+         * 연산자의 줄 번호를 기록하고 연산자 번호를 반환한다.
+         */
+        private int operator(Token token) {
+            writeVarint(lines, zigzag(token.line - line));
+            line = token.line;
+
+            String key = token.type.ordinal() + " " + token.lexeme();
+            Integer index = operatorIndexes.get(key);
+            if (index != null) return index;
+
+            constant(token.lexeme());
+            operatorIndexes.put(key, operators.size());
+            operators.add(token);
+            return operators.size() - 1;
+        }
+
+        /**
+         * 상수의 번호를 반환한다. 처음 보는 값이면 상수 표에 넣는다.
+         * 숫자는 Double.equals()로 비교하므로 0.0과 -0.0은 다른 상수이다.
+         */
+        private int constant(Object value) {
+            Integer index = constantIndexes.get(value);
+            if (index != null) return index;
+
+            constantIndexes.put(value, constants.size());
+            constants.add(value);
+            return constants.size() - 1;
+        }
+
+        private void node(byte kind, int operand) {
+            writeVarint(nodes, operand << 2 | kind);
+            nodeCount++;
+        }
+    }
+
+    /**
+     * .loxc 형식의 바이트를 읽어 구문 트리를 다시 만든다.
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    static Script decode(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) throw new IOException("Not a .loxc file.");
+            short version = buffer.getShort();
+            if (version != VERSION) throw new IOException("Unsupported .loxc version " + version + ".");
+            boolean optimized = (buffer.getShort() & OPTIMIZED) != 0;
+
+            Object[] constants = new Object[count(buffer)];
+            for (int i = 0; i < constants.length; i++) {
+                byte tag = buffer.get();
+                if (tag == NUMBER_CONSTANT) {
+                    constants[i] = buffer.getDouble();
+                } else if (tag == STRING_CONSTANT) {
+                    byte[] bytes = new byte[count(buffer)];
+                    buffer.get(bytes);
+                    constants[i] = new String(bytes, StandardCharsets.UTF_8);
+                } else {
+                    throw new IOException("Unknown constant tag " + tag + ".");
+                }
+            }
+
+            TokenType[] operatorTypes = new TokenType[count(buffer)];
+            String[] operatorLexemes = new String[operatorTypes.length];
+            for (int i = 0; i < operatorTypes.length; i++) {
+                operatorTypes[i] = TYPES[buffer.get()];
+                operatorLexemes[i] = (String) constants[readVarint(buffer)];
+            }
+
+            int nodeCount = count(buffer);
+            if (nodeCount == 0) throw new IOException("Empty .loxc file.");
+            int nodeBytes = count(buffer);
+            int nodesEnd = buffer.position() + nodeBytes;
+            // 줄 번호 표는 노드 바로 뒤에 있으므로 따로 읽어 나간다.
+            ByteBuffer lines = buffer.duplicate();
+            lines.position(nodesEnd);
+            int line = 0;
+
+            Expr[] stack = new Expr[16];
+            int top = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                int node = readVarint(buffer);
+                int operand = node >>> 2;
+
+                Expr expr;
+                switch ((byte) (node & 3)) {
+                    case Expr.BINARY: {
+                        line += unzigzag(readVarint(lines));
+                        Token operator = operator(operatorTypes, operatorLexemes, operand, line, false);
+                        Expr right = stack[--top];
+                        Expr left = stack[--top];
+                        expr = new Expr.Binary(left, operator, right);
+                        break;
+                    }
+                    case Expr.GROUPING:
+                        expr = new Expr.Grouping(stack[--top]);
+                        break;
+                    case Expr.LITERAL:
+                        expr = new Expr.Literal(literal(constants, operand));
+                        break;
+                    default: {
+                        line += unzigzag(readVarint(lines));
+                        Token operator = operator(operatorTypes, operatorLexemes, operand, line, true);
+                        expr = new Expr.Unary(operator, stack[--top]);
+                    }
+                }
+
+                if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = expr;
+            }
+            // 노드는 정확히 nodeBytes만큼, 줄 번호 표는 파일 끝까지 읽어야 한다.
+            if (top != 1 || buffer.position() != nodesEnd || lines.hasRemaining()) {
+                throw new IOException("Corrupt .loxc file.");
+            }
+
+            return new Script(stack[0], optimized);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                 | ClassCastException e) {
+            throw new IOException("Corrupt .loxc file.", e);
+        }
+    }
+
+    /**
+     * 연산자 표의 operand번 연산자로 토큰을 만든다.
+     * 백엔드는 모르는 연산자를 조용히 건너뛰므로, 그 자리에 올 수 없는 연산자면 파일이 손상된 것으로 본다.
+     */
+    private static Token operator(TokenType[] types, String[] lexemes, int operand, int line, boolean unary)
+            throws IOException {
+        TokenType type = types[operand];
+        if (unary ? !isUnaryOperator(type) : !isBinaryOperator(type)) throw new IOException("Corrupt .loxc file.");
+        return new Token(type, lexemes[operand], null, line);
+    }
+
+    private static boolean isUnaryOperator(TokenType type) {
+        return type == TokenType.MINUS || type == TokenType.BANG;
+    }
+
+    private static boolean isBinaryOperator(TokenType type) {
+        switch (type) {
+            case BANG_EQUAL: case EQUAL_EQUAL:
+            case GREATER: case GREATER_EQUAL: case LESS: case LESS_EQUAL:
+            case MINUS: case PLUS: case SLASH: case STAR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Object literal(Object[] constants, int operand) {
+        switch (operand) {
+            case NIL: return null;
+            case FALSE: return false;
+            case TRUE: return true;
+            default: return constants[operand - FIRST_CONSTANT];
+        }
+    }
+
+    /**
+     * 개수나 길이를 읽는다. 항목마다 적어도 한 바이트를 차지하므로 남은 바이트 수보다 클 수 없다.
+     */
+    private static int count(ByteBuffer buffer) throws IOException {
+        int count = readVarint(buffer);
+        if (count < 0 || count > buffer.remaining()) throw new IOException("Corrupt .loxc file.");
+        return count;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Corrupt .loxc file.");
+    }
+
+    /**
+     * 작은 음수도 짧게 쓰도록 부호를 가장 아래 비트로 옮긴다. 0, -1, 1, -2 ... 가 0, 1, 2, 3 ... 이 된다.
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,84 @@
+package com.binn328.lox;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 메모리 맵으로 읽은 ASCII 소스 파일을 문자열로 복사하지 않고 그대로 CharSequence로 보여준다.
+ * ASCII 파일은 바이트 하나가 문자 하나이므로 charAt()은 바이트를 그대로 읽는다.
+ */
+class MappedSource implements CharSequence {
+    private final MappedByteBuffer buffer;
+    private final int length;
+
+    private MappedSource(MappedByteBuffer buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * 파일을 메모리 맵으로 읽어 스캐너에 넘길 소스를 만든다.
+     * 파일이 ASCII면 맵 위에서 바로 읽고, 아니면 맵에서 한 번만 디코딩한다.
+     * @param path 스크립트 파일의 경로
+     * @param charset ASCII가 아닐 때 디코딩에 쓸 문자셋
+     * @return
+     * @throws IOException 파일을 읽을 수 없거나 2GB보다 클 때
+     */
+    static CharSequence map(Path path, Charset charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map: " + path);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (isAscii(buffer)) return new MappedSource(buffer, (int) size);
+
+            return charset.decode(buffer);
+        }
+    }
+
+    private static boolean isAscii(MappedByteBuffer buffer) {
+        int limit = buffer.limit();
+        int i = 0;
+
+        // 여덟 바이트씩 한꺼번에 최상위 비트를 검사한다.
+        for (; i + 8 <= limit; i += 8) {
+            if ((buffer.getLong(i) & 0x8080808080808080L) != 0) return false;
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) buffer.get(index);
+    }
+
+    /**
+     * 렉심을 잘라낼 때 쓰이므로 String을 반환한다.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
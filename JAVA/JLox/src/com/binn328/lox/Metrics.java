@@ -0,0 +1,312 @@
+package com.binn328.lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Lox.run()의 단계별 시간과 토큰 수, 노드 수, 트리 깊이, 할당량을 기록한다.
+ * --metrics로 켜면 실행마다 Run을 하나 만들어 세션에 달아두고, 실행이 끝나면 누계에 더한 뒤 JSON 한 줄로 출력한다.
+ * 꺼져 있으면 세션의 metrics가 null이므로 실행 경로에는 null 검사만 남는다.
+ * 여러 세션이 동시에 실행해도 누계가 섞이지 않는다.
+ */
+class Metrics implements MetricsMBean {
+    /**
+     * JMX에 등록하는 이름
+     */
+    static final String OBJECT_NAME = "com.binn328.lox:type=Metrics";
+
+    /**
+     * 실행 한 번의 통계. 세션과 같이 한 스레드에서만 쓴다.
+     * 재지 않은 값은 -1이다.
+     */
+    static class Run {
+        long scanNanos = -1;
+        long parseNanos = -1;
+        long executeNanos = -1;
+        int tokens = -1;
+        int nodes = -1;
+        int maxDepth = -1;
+        long allocatedBytes = -1;
+        boolean cached = false;
+        /**
+         * 직전 단계가 끝난 시각
+         */
+        private long mark;
+        private final long startBytes;
+
+        private Run() {
+            startBytes = allocatedBytes();
+            mark = System.nanoTime();
+        }
+
+        /**
+         * 스캔이 끝났을 때 부른다.
+         * @param tokens 스캔한 토큰
+         */
+        void scanned(TokenBuffer tokens) {
+            scanNanos = lap();
+            this.tokens = tokens.count;
+        }
+
+        /**
+         * 파싱과 최적화가 끝났을 때 부른다. 트리를 세는 시간은 다음 단계에 넣지 않는다.
+         * @param expression
+         */
+        void parsed(Expr expression) {
+            parseNanos = lap();
+            measure(expression);
+            mark = System.nanoTime();
+        }
+
+        void parsed(ExprArena arena) {
+            parseNanos = lap();
+            measure(arena);
+            mark = System.nanoTime();
+        }
+
+        /**
+         * 파싱 캐시에서 식을 찾았을 때 부른다.
+         * @param expression
+         */
+        void cached(Expr expression) {
+            cached = true;
+            measure(expression);
+            mark = System.nanoTime();
+        }
+
+        /**
+         * 평가나 출력이 끝났을 때 부른다.
+         */
+        void executed() {
+            executeNanos = lap();
+        }
+
+        private long lap() {
+            long now = System.nanoTime();
+            long elapsed = now - mark;
+            mark = now;
+            return elapsed;
+        }
+
+        /**
+         * 노드 수와 트리 깊이를 센다. 깊은 트리에서도 호출 스택이 늘어나지 않도록 스택 배열로 순회한다.
+         */
+        private void measure(Expr root) {
+            Expr[] pending = new Expr[16];
+            int[] depths = new int[16];
+            int top = 0;
+            pending[top] = root;
+            depths[top++] = 1;
+
+            int count = 0;
+            int deepest = 0;
+            while (top > 0) {
+                Expr expr = pending[--top];
+                int depth = depths[top];
+                count++;
+                deepest = Math.max(deepest, depth);
+
+                if (top + 2 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                    depths = Arrays.copyOf(depths, depths.length * 2);
+                }
+                switch (expr.kind) {
+                    case Expr.BINARY:
+                        pending[top] = ((Expr.Binary) expr).left;
+                        depths[top++] = depth + 1;
+                        pending[top] = ((Expr.Binary) expr).right;
+                        depths[top++] = depth + 1;
+                        break;
+                    case Expr.GROUPING:
+                        pending[top] = ((Expr.Grouping) expr).expression;
+                        depths[top++] = depth + 1;
+                        break;
+                    case Expr.UNARY:
+                        pending[top] = ((Expr.Unary) expr).right;
+                        depths[top++] = depth + 1;
+                        break;
+                }
+            }
+
+            this.nodes = count;
+            this.maxDepth = deepest;
+        }
+
+        /**
+         * 아레나의 노드는 후위 순서로 들어있으므로 앞에서부터 한 번 훑으며 각 노드의 높이를 구한다.
+         */
+        private void measure(ExprArena arena) {
+            int[] heights = new int[arena.count];
+            for (int expr = 0; expr < arena.count; expr++) {
+                switch (arena.kinds[expr]) {
+                    case ExprArena.BINARY:
+                        heights[expr] = 1 + Math.max(heights[arena.binaryLeft(expr)], heights[arena.binaryRight(expr)]);
+                        break;
+                    case ExprArena.GROUPING:
+                        heights[expr] = 1 + heights[arena.groupingExpression(expr)];
+                        break;
+                    case ExprArena.UNARY:
+                        heights[expr] = 1 + heights[arena.unaryRight(expr)];
+                        break;
+                    default:
+                        heights[expr] = 1;
+                }
+            }
+
+            nodes = arena.count;
+            maxDepth = arena.count == 0 ? 0 : heights[arena.root()];
+        }
+
+        /**
+         * JSON 객체 한 줄: {"scanNanos":1200,"parseNanos":3400,...}
+         * @return
+         */
+        String toJson() {
+            return "{\"scanNanos\":" + scanNanos
+                    + ",\"parseNanos\":" + parseNanos
+                    + ",\"executeNanos\":" + executeNanos
+                    + ",\"tokens\":" + tokens
+                    + ",\"nodes\":" + nodes
+                    + ",\"maxDepth\":" + maxDepth
+                    + ",\"allocatedBytes\":" + allocatedBytes
+                    + ",\"cached\":" + cached + "}";
+        }
+    }
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder cachedRuns = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder executeNanos = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private volatile String lastRun = "";
+    /**
+     * true면 실행마다 JSON 한 줄을 그 실행의 세션 에러 출력에 쓴다.
+     */
+    private final boolean dump;
+
+    /**
+     * @param dump true면 실행마다 통계를 JSON 한 줄로 쓰고, false면 JMX로만 보여준다.
+     */
+    Metrics(boolean dump) {
+        this.dump = dump;
+    }
+
+    /**
+     * 통계를 JMX 플랫폼 MBean 서버에 OBJECT_NAME으로 등록한다.
+     * @return this
+     */
+    Metrics register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new StandardMBean(this, MetricsMBean.class), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME + ".", e);
+        }
+        return this;
+    }
+
+    /**
+     * 실행 한 번의 기록을 시작한다.
+     * @return
+     */
+    Run begin() {
+        return new Run();
+    }
+
+    /**
+     * 실행 한 번의 기록을 끝내고 누계에 더한다.
+     * JSON은 그 실행의 세션에 쓰므로, --batch에서는 파일의 에러 메시지와 함께, --server에서는 그 클라이언트에게 간다.
+     * @param run
+     * @param err 실행한 세션의 에러 출력
+     */
+    void end(Run run, PrintStream err) {
+        if (run.startBytes >= 0) run.allocatedBytes = allocatedBytes() - run.startBytes;
+
+        runs.increment();
+        if (run.cached) cachedRuns.increment();
+        if (run.scanNanos > 0) scanNanos.add(run.scanNanos);
+        if (run.parseNanos > 0) parseNanos.add(run.parseNanos);
+        if (run.executeNanos > 0) executeNanos.add(run.executeNanos);
+        if (run.tokens > 0) tokens.add(run.tokens);
+        if (run.nodes > 0) nodes.add(run.nodes);
+        maxDepth.accumulateAndGet(run.maxDepth, Math::max);
+        if (run.allocatedBytes > 0) allocatedBytes.add(run.allocatedBytes);
+
+        String json = run.toJson();
+        lastRun = json;
+        if (dump) err.println(json);
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getCachedRuns() {
+        return cachedRuns.sum();
+    }
+
+    @Override
+    public long getScanNanos() {
+        return scanNanos.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    @Override
+    public long getExecuteNanos() {
+        return executeNanos.sum();
+    }
+
+    @Override
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public String getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * 현재 스레드가 지금까지 할당한 바이트 수
+     * @return JVM이 스레드별 할당량을 재지 못하면 -1
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled()) return -1;
+        return sunThreads.getCurrentThreadAllocatedBytes();
+    }
+}
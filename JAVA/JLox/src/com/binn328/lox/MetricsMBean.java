@@ -0,0 +1,48 @@
+package com.binn328.lox;
+
+/**
+ * JMX로 보여주는 실행 통계. Metrics가 구현하며, 값은 모두 프로세스가 시작된 뒤의 누계이다.
+ * 시간은 나노초, 메모리는 바이트 단위이다.
+ */
+public interface MetricsMBean {
+    /**
+     * 통계를 기록한 실행 수
+     */
+    long getRuns();
+
+    /**
+     * 스캔과 파싱을 건너뛰고 파싱 캐시의 결과를 쓴 실행 수
+     */
+    long getCachedRuns();
+
+    long getScanNanos();
+
+    /**
+     * 파싱과 최적화에 쓴 시간. 스트리밍 모드에서는 스캔도 파싱하면서 하므로 여기에 들어간다.
+     */
+    long getParseNanos();
+
+    /**
+     * 평가나 구문 트리 출력에 쓴 시간
+     */
+    long getExecuteNanos();
+
+    long getTokens();
+
+    long getNodes();
+
+    /**
+     * 지금까지 실행한 식 중 가장 깊은 구문 트리의 깊이
+     */
+    int getMaxDepth();
+
+    /**
+     * 실행한 스레드에서 할당한 메모리. JVM이 스레드별 할당량을 재지 못하면 0이다.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * 마지막 실행의 통계를 JSON 한 줄로 반환한다.
+     */
+    String getLastRun();
+}
@@ -0,0 +1,33 @@
+package com.binn328.lox;
+
+/**
+ * 바이트코드 명령어
+ * 명령어 스트림이 byte[]이므로 enum 대신 byte 상수로 정의한다.
+ */
+final class OpCode {
+    /**
+     * 상수 풀의 값을 스택에 넣는다. 피연산자: 1바이트 인덱스
+     */
+    static final byte CONSTANT = 0;
+    /**
+     * 상수 풀의 값을 스택에 넣는다. 피연산자: 3바이트 인덱스
+     */
+    static final byte CONSTANT_LONG = 1;
+    static final byte NIL = 2;
+    static final byte TRUE = 3;
+    static final byte FALSE = 4;
+    static final byte EQUAL = 5;
+    static final byte GREATER = 6;
+    static final byte GREATER_EQUAL = 7;
+    static final byte LESS = 8;
+    static final byte LESS_EQUAL = 9;
+    static final byte ADD = 10;
+    static final byte SUBTRACT = 11;
+    static final byte MULTIPLY = 12;
+    static final byte DIVIDE = 13;
+    static final byte NOT = 14;
+    static final byte NEGATE = 15;
+    static final byte RETURN = 16;
+
+    private OpCode() {}
+}
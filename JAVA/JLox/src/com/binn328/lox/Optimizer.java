@@ -0,0 +1,188 @@
+package com.binn328.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 파싱한 식을 평가하기 전에 단순하게 만드는 최적화 패스
+ * 리터럴만으로 이루어진 Binary, Unary 노드는 미리 계산한 Literal로 바꾸고,
+ * Grouping은 구문 트리의 모양에 이미 반영되어 있으므로 벗겨낸다.
+ * 실행 결과와 실행 중 에러가 최적화 전과 같은 경우에만 식을 바꾼다.
+ * 트리는 ExprStack으로 재귀 호출 없이 순회하고, 최적화한 자식 노드는 results 스택에 쌓아둔다.
+ */
+class Optimizer implements Expr.Visitor<Void> {
+    /**
+     * 상수 식을 미리 계산하는 데 쓰는 인터프리터. evaluate()만 쓰므로 세션에 아무것도 기록하지 않는다.
+     */
+    private final Interpreter evaluator = new Interpreter(new LoxSession());
+    private final ExprStack pending = new ExprStack();
+    private final List<Expr> results = new ArrayList<>();
+
+    /**
+     * 식을 최적화한 새 식을 반환한다.
+     * @param expr
+     * @return
+     */
+    Expr optimize(Expr expr) {
+        pending.clear();
+        results.clear();
+        pending.push(expr);
+
+        while (!pending.isEmpty()) {
+            Expr node = pending.pop();
+            if (!pending.isExit()) {
+                node.accept(this);
+            } else if (node instanceof Expr.Unary) {
+                Expr right = pop();
+                results.add(optimizeUnary((Expr.Unary) node, right));
+            } else {
+                Expr right = pop();
+                Expr left = pop();
+                results.add(optimizeBinary((Expr.Binary) node, left, right));
+            }
+        }
+
+        return pop();
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        pending.pushExit(expr);
+        pending.push(expr.right);
+        pending.push(expr.left);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        // Grouping은 벗겨내고 안쪽 식만 최적화한다.
+        pending.push(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        results.add(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        pending.pushExit(expr);
+        pending.push(expr.right);
+        return null;
+    }
+
+    /**
+     * 이미 최적화한 피연산자로 이항 연산 노드를 최적화한다.
+     * @param expr
+     * @param left
+     * @param right
+     * @return
+     */
+    private Expr optimizeBinary(Expr.Binary expr, Expr left, Expr right) {
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Expr folded = fold(new Expr.Binary(left, expr.operator, right));
+            if (folded != null) return folded;
+        }
+
+        // 결과가 숫자로 정해진 식에만 항등원을 없앤다.
+        // x가 문자열이면 x * 1은 에러를 내므로 x로 바꾸면 안 된다.
+        switch (expr.operator.type) {
+            case STAR:
+                if (isNumber(right, 1) && isNumeric(left)) return left;
+                if (isNumber(left, 1) && isNumeric(right)) return right;
+                break;
+            case SLASH:
+                if (isNumber(right, 1) && isNumeric(left)) return left;
+                break;
+            case MINUS:
+                // x + 0은 x가 -0일 때 0이 되므로 바꾸지 않지만, x - 0은 항상 x이다.
+                if (isNumber(right, 0) && isNumeric(left)) return left;
+                break;
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    private Expr optimizeUnary(Expr.Unary expr, Expr right) {
+        if (right instanceof Expr.Literal) {
+            Expr folded = fold(new Expr.Unary(expr.operator, right));
+            if (folded != null) return folded;
+        }
+
+        // --x는 x가 숫자일 때 x이고, !!x는 x가 참/거짓일 때 x이다.
+        if (right instanceof Expr.Unary && ((Expr.Unary) right).operator.type == expr.operator.type) {
+            Expr inner = ((Expr.Unary) right).right;
+            if (expr.operator.type == TokenType.MINUS && isNumeric(inner)) return inner;
+            if (expr.operator.type == TokenType.BANG && isBoolean(inner)) return inner;
+        }
+
+        if (right == expr.right) return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    private Expr pop() {
+        return results.remove(results.size() - 1);
+    }
+
+    /**
+     * 리터럴만으로 이루어진 식을 계산하여 Literal로 바꾼다.
+     * @param expr
+     * @return 실행 중 에러가 나는 식이면 에러가 실행할 때 보고되도록 null을 반환한다.
+     */
+    private Expr fold(Expr expr) {
+        try {
+            return new Expr.Literal(evaluator.evaluate(expr));
+        } catch (RuntimeError error) {
+            return null;
+        }
+    }
+
+    private static boolean isNumber(Expr expr, double value) {
+        return expr instanceof Expr.Literal && Double.valueOf(value).equals(((Expr.Literal) expr).value);
+    }
+
+    /**
+     * 식의 결과가 숫자가 아니라면 에러를 내는지 확인한다.
+     * 한 단계만 살펴보므로 false가 나와도 숫자가 아니라는 뜻은 아니다.
+     * @param expr
+     * @return
+     */
+    private static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal) return ((Expr.Literal) expr).value instanceof Double;
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.type == TokenType.MINUS;
+        if (expr instanceof Expr.Binary) {
+            switch (((Expr.Binary) expr).operator.type) {
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 식의 결과가 항상 참/거짓인지 확인한다.
+     * @param expr
+     * @return
+     */
+    private static boolean isBoolean(Expr expr) {
+        if (expr instanceof Expr.Literal) return ((Expr.Literal) expr).value instanceof Boolean;
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.type == TokenType.BANG;
+        if (expr instanceof Expr.Binary) {
+            switch (((Expr.Binary) expr).operator.type) {
+                case BANG_EQUAL:
+                case EQUAL_EQUAL:
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,144 @@
+package com.binn328.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 아주 큰 소스 코드를 여러 조각으로 나누어 ForkJoinPool에서 동시에 스캔하고, 토큰들을 다시 이어 붙인다.
+ * 조각은 문자열 리터럴과 주석 밖에 있는 줄바꿈 바로 뒤에서만 나누므로 토큰이 조각 경계에 걸치지 않는다.
+ * 결과는 Scanner로 처음부터 끝까지 스캔한 것과 토큰 하나하나까지 같고, 에러도 같은 순서로 출력된다.
+ */
+class ParallelScanner {
+    /**
+     * 이보다 작은 조각으로는 나누지 않는다. 소스가 이보다 작으면 그냥 Scanner로 스캔한다.
+     */
+    static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * 공용 ForkJoinPool로 소스 코드를 스캔한다.
+     * @param session
+     * @param source
+     * @return
+     */
+    static TokenBuffer scan(LoxSession session, CharSequence source) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // 스레드마다 조각을 몇 개씩 맡겨서 조각 크기가 고르지 않아도 일이 한쪽으로 몰리지 않게 한다.
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, source.length() / (pool.getParallelism() * 4));
+        return scan(session, source, chunkSize, pool);
+    }
+
+    /**
+     * 소스 코드를 대략 chunkSize 글자씩 나누어 스캔한다.
+     * @param session
+     * @param source
+     * @param chunkSize
+     * @param pool
+     * @return
+     */
+    static TokenBuffer scan(LoxSession session, CharSequence source, int chunkSize, ForkJoinPool pool) {
+        List<Integer> bounds = new ArrayList<>();
+        List<Integer> lines = new ArrayList<>();
+        split(source, chunkSize, bounds, lines);
+        if (bounds.size() == 2) return new Scanner(session, source).scanBuffer();
+
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            chunks.add(new Chunk(source, bounds.get(i), bounds.get(i + 1), lines.get(i)));
+        }
+        for (Chunk chunk : chunks) pool.execute(chunk);
+        for (Chunk chunk : chunks) chunk.join();
+
+        return stitch(session, source, chunks);
+    }
+
+    /**
+     * 소스 코드를 나눌 위치를 찾는다.
+     * 문자열 리터럴과 주석만 구분하는 가벼운 상태 기계로 소스를 한 번 훑으면서,
+     * chunkSize 글자마다 그 뒤로 처음 나오는, 문자열 밖의 줄바꿈 바로 뒤를 고른다.
+     * 주석은 줄바꿈에서 끝나므로 줄바꿈 바로 뒤는 주석 밖이다.
+     * @param source
+     * @param chunkSize
+     * @param bounds 0과 소스 길이를 포함한 나눌 위치들
+     * @param lines 각 조각이 시작하는 줄 번호
+     */
+    private static void split(CharSequence source, int chunkSize, List<Integer> bounds, List<Integer> lines) {
+        int length = source.length();
+        bounds.add(0);
+        lines.add(1);
+
+        boolean inString = false;
+        int line = 1;
+        int next = chunkSize;
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '\n') {
+                line++;
+                if (!inString && i + 1 >= next && i + 1 < length) {
+                    bounds.add(i + 1);
+                    lines.add(line);
+                    next = i + 1 + chunkSize;
+                }
+            } else if (c == '"') {
+                inString = !inString;
+            } else if (c == '/' && !inString && i + 1 < length && source.charAt(i + 1) == '/') {
+                // 주석 안의 "는 문자열을 시작하지 않으므로 줄 끝까지 건너뛴다.
+                while (i + 1 < length && source.charAt(i + 1) != '\n') i++;
+            }
+        }
+
+        bounds.add(length);
+    }
+
+    /**
+     * 조각들의 토큰을 순서대로 이어 붙인다.
+     * 조각마다 따로 쓴 심볼 테이블의 심볼을 조각 순서대로 세션의 심볼 테이블에 등록하므로,
+     * 심볼 ID도 처음부터 차례로 스캔했을 때와 같다.
+     * 조각 끝의 EOF 토큰은 마지막 조각의 것만 남긴다.
+     */
+    private static TokenBuffer stitch(LoxSession session, CharSequence source, List<Chunk> chunks) {
+        int total = 0;
+        for (Chunk chunk : chunks) total += chunk.tokens.count - 1;
+
+        TokenBuffer tokens = new TokenBuffer(source, session.symbols, total + 1);
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+
+            SymbolTable symbols = chunk.session.symbols;
+            int[] symbolMap = new int[symbols.size()];
+            for (int id = 0; id < symbolMap.length; id++) {
+                symbolMap[id] = session.symbols.intern(symbols.name(id));
+            }
+
+            boolean last = i == chunks.size() - 1;
+            tokens.addAll(chunk.tokens, last ? chunk.tokens.count : chunk.tokens.count - 1, symbolMap);
+
+            for (Diagnostic diagnostic : chunk.session.diagnostics) session.report(diagnostic);
+        }
+        return tokens;
+    }
+
+    /**
+     * 조각 하나를 스캔하는 작업
+     * 에러는 출력하지 않고 조각의 세션에 모아 두었다가, 이어 붙일 때 세션에 순서대로 보고한다.
+     */
+    private static class Chunk extends RecursiveAction {
+        final LoxSession session;
+        private final Scanner scanner;
+        TokenBuffer tokens;
+
+        Chunk(CharSequence source, int from, int to, int line) {
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            this.session = new LoxSession(discard, discard);
+            this.scanner = new Scanner(session, source, from, to, line);
+        }
+
+        @Override
+        protected void compute() {
+            tokens = scanner.scanBuffer();
+        }
+    }
+}
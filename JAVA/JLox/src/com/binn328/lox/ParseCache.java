@@ -0,0 +1,215 @@
+package com.binn328.lox;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 같은 소스 코드를 다시 실행할 때 스캔과 파싱을 건너뛰도록 파싱 결과를 담아두는 LRU 캐시
+ * 소스의 64비트 해시로 찾되, 해시가 충돌해도 다른 소스의 결과를 돌려주지 않도록 소스 전체를 비교한다.
+ * 소스는 복사하지 않고 참조만 담으므로, --mmap으로 읽은 파일도 힙에 문자열로 만들지 않는다.
+ * 구문 에러 없이 파싱된 결과만 담고, 여러 스레드에서 함께 쓸 수 있다.
+ */
+class ParseCache {
+    /**
+     * 캐시에 담긴 파싱 결과
+     */
+    static class Entry {
+        /**
+         * 파싱한 식. Optimizer를 켜고 담았으면 최적화한 식이다.
+         */
+        final Expr expression;
+        /**
+         * VM으로 실행할 때 처음 한 번 컴파일해 두는 청크
+         */
+        private volatile Chunk chunk;
+        /**
+         * --jit으로 실행할 때 평가 횟수를 세는 식
+         */
+        private TieredExpr tiered;
+        /**
+         * --specialize로 실행할 때 처음 한 번 만들어 두는 실행 트리. 너무 깊어 만들지 못했으면 null이다.
+         */
+        private ExecutionTree tree;
+        private boolean treeBuilt = false;
+
+        Entry(Expr expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * 식을 컴파일한 청크를 반환한다. 여러 스레드가 동시에 처음 부르면 각자 컴파일할 수 있지만 결과는 같다.
+         * @return
+         */
+        Chunk chunk() {
+            Chunk compiled = chunk;
+            if (compiled == null) {
+                compiled = new Compiler().compile(expression);
+                chunk = compiled;
+            }
+            return compiled;
+        }
+
+        /**
+         * 평가 횟수를 세어 Jit으로 컴파일하는 식을 반환한다. 처음 부를 때 준 문턱값을 계속 쓴다.
+         * @param threshold
+         * @return
+         */
+        synchronized TieredExpr tiered(int threshold) {
+            if (tiered == null) tiered = new TieredExpr(expression, threshold);
+            return tiered;
+        }
+
+        /**
+         * 식의 실행 트리를 반환한다. 실행하면서 노드가 특수화되므로 같은 소스를 실행할 때마다 같은 트리를 쓴다.
+         * @return 트리가 너무 깊으면 null
+         */
+        synchronized ExecutionTree tree() {
+            if (!treeBuilt) {
+                tree = ExecutionTree.build(expression);
+                treeBuilt = true;
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * 소스 하나를 찾고 담을 때 쓰는 키. key()로 한 번 만들어 get()과 put()에 함께 넘기면 해시를 한 번만 계산한다.
+     * 담긴 소스의 내용은 바뀌지 않는다고 본다.
+     */
+    static final class Key {
+        final long hash;
+        final CharSequence source;
+        /**
+         * 최적화 여부에 따라 담기는 식이 다르므로 키에 넣는다.
+         */
+        final boolean optimized;
+
+        private Key(CharSequence source, boolean optimized) {
+            this.hash = hash(source);
+            this.source = source;
+            this.optimized = optimized;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return hash == key.hash && optimized == key.optimized && contentEquals(source, key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) ^ (optimized ? 1 : 0);
+        }
+    }
+
+    private final Map<Key, Entry> entries;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param capacity 담아둘 최대 결과 수. 넘치면 가장 오래 쓰지 않은 결과부터 버린다.
+     */
+    ParseCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Cache capacity must be positive.");
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 소스 코드를 찾을 키를 만든다. 소스를 한 번 훑어 해시를 계산한다.
+     * @param source
+     * @param optimized
+     * @return
+     */
+    Key key(CharSequence source, boolean optimized) {
+        return new Key(source, optimized);
+    }
+
+    /**
+     * 소스 코드의 파싱 결과를 찾는다.
+     * @param key
+     * @return 담긴 결과가 없으면 null
+     */
+    synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * 파싱 결과를 담는다. 다른 스레드가 먼저 같은 소스를 담았으면 그 결과를 반환한다.
+     * @param key get()에 넘겼던 키
+     * @param expression 구문 에러 없이 파싱한 식
+     * @return
+     */
+    synchronized Entry put(Key key, Expr expression) {
+        return entries.computeIfAbsent(key, k -> new Entry(expression));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "parse cache: " + entries.size() + " entries, " + hits + " hits, "
+                + misses + " misses, " + evictions + " evictions";
+    }
+
+    /**
+     * 두 소스의 내용을 한 글자씩 비교한다. 둘 다 String이면 String.equals()를 쓴다.
+     * @param a
+     * @param b
+     * @return
+     */
+    private static boolean contentEquals(CharSequence a, CharSequence b) {
+        if (a == b) return true;
+        if (a instanceof String && b instanceof String) return a.equals(b);
+
+        int length = a.length();
+        if (length != b.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 소스 코드의 64비트 FNV-1a 해시
+     * @param source
+     * @return
+     */
+    static long hash(CharSequence source) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) {
+            hash ^= source.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -1,144 +1,430 @@
 package com.binn328.lox;
 
+import java.util.Arrays;
 import java.util.List;
 
 import static com.binn328.lox.TokenType.*;
 
 /**
  * 문법 규칙을 파싱하는 파서 클래스
+ * 토큰은 TokenBuffer의 배열에서 바로 읽고, Token 객체는 구문 트리에 넣거나 에러를 보고할 때만 만든다.
  */
 public class Parser {
     private static class ParseError extends RuntimeException {}
 
-    private final List<Token> tokens;
-    private int current = 0;
+    /**
+     * 연산자 스택에서 여는 괄호와 단항 연산자의 우선순위. 이항 연산자는 그 사이의 값을 쓴다.
+     */
+    private static final int GROUP = 0;
+    private static final int UNARY = 5;
 
-    public Parser(List<Token> tokens) {
-        this.tokens = tokens;
+    /**
+     * 파서가 만든 노드를 받아두는 곳
+     * 노드와 연산자 토큰을 int 핸들로 주고받으므로, 같은 파싱 과정으로 Expr 트리와 ExprArena를 모두 만든다.
+     */
+    private interface NodeSink {
+        /**
+         * 직전에 소비한 토큰을 연산자로 기억하고 그 핸들을 반환한다.
+         * @return
+         */
+        int operator();
+        /**
+         * 직전에 소비한 NUMBER, STRING, TRUE, FALSE, NIL 토큰으로 리터럴 노드를 만든다.
+         * @return
+         */
+        int literal();
+        /**
+         * withColumns()로 준 열 중 하나를 가리키는 리터럴 노드를 만든다.
+         * @param index 열 번호
+         * @return
+         */
+        int column(int index);
+        int grouping(int expression);
+        int unary(int operator, int right);
+        int binary(int left, int operator, int right);
     }
 
     /**
-     * 파서를 기동하는 초기 메소드
-     * @return
+     * Expr 객체로 노드를 만든다.
+     * expression()은 피연산자와 연산자를 스택 순서대로 꺼내 쓰므로, 아직 트리에 붙지 않은 노드와 연산자 토큰만 스택에 둔다.
+     * 핸들은 스택에서의 위치이고, 노드를 묶으면 자식 자리를 비우므로 파싱이 끝나면 루트 노드 하나만 남는다.
      */
-    public Expr parse() {
-        try {
-            return expression();
-        } catch (ParseError error) {
-            return null;
+    private class TreeSink implements NodeSink {
+        private Expr[] nodes = new Expr[16];
+        private int nodeCount = 0;
+        private Token[] operators = new Token[16];
+        private int operatorCount = 0;
+
+        @Override
+        public int operator() {
+            if (operatorCount == operators.length) operators = Arrays.copyOf(operators, operatorCount * 2);
+            operators[operatorCount] = previous();
+            return operatorCount++;
+        }
+
+        @Override
+        public int literal() {
+            switch (tokens.type(current - 1)) {
+                case TRUE: return push(new Expr.Literal(true));
+                case FALSE: return push(new Expr.Literal(false));
+                case NIL: return push(new Expr.Literal(null));
+                default: return push(new Expr.Literal(tokens.literal(current - 1)));
+            }
+        }
+
+        @Override
+        public int column(int index) {
+            return push(new Expr.Literal(new ColumnExpr.Column(index)));
+        }
+
+        @Override
+        public int grouping(int expression) {
+            return push(new Expr.Grouping(pop(expression)));
+        }
+
+        @Override
+        public int unary(int operator, int right) {
+            Expr operand = pop(right);
+            return push(new Expr.Unary(popOperator(operator), operand));
+        }
+
+        @Override
+        public int binary(int left, int operator, int right) {
+            Expr rightExpr = pop(right);
+            Expr leftExpr = pop(left);
+            return push(new Expr.Binary(leftExpr, popOperator(operator), rightExpr));
+        }
+
+        /**
+         * 다 만든 트리의 루트를 꺼낸다.
+         */
+        Expr root(int root) {
+            return pop(root);
+        }
+
+        private int push(Expr expr) {
+            if (nodeCount == nodes.length) nodes = Arrays.copyOf(nodes, nodeCount * 2);
+            nodes[nodeCount] = expr;
+            return nodeCount++;
+        }
+
+        /**
+         * 스택 맨 위의 노드를 꺼낸다. 핸들은 항상 맨 위를 가리킨다.
+         */
+        private Expr pop(int handle) {
+            if (handle != nodeCount - 1) throw new IllegalStateException("Node " + handle + " is not on top of the stack.");
+            Expr expr = nodes[--nodeCount];
+            nodes[nodeCount] = null;
+            return expr;
+        }
+
+        private Token popOperator(int handle) {
+            if (handle != operatorCount - 1) {
+                throw new IllegalStateException("Operator " + handle + " is not on top of the stack.");
+            }
+            Token operator = operators[--operatorCount];
+            operators[operatorCount] = null;
+            return operator;
         }
     }
 
     /**
-     * expression 규칙
-     * expression -> equality;
-     * @return
+     * ExprArena에 노드를 만든다. 연산자 핸들은 토큰 버퍼에서의 인덱스이다.
      */
-    private Expr expression() {
-        return equality();
+    private class ArenaSink implements NodeSink {
+        final ExprArena arena = new ExprArena(tokens);
+
+        @Override
+        public int operator() {
+            return current - 1;
+        }
+
+        @Override
+        public int literal() {
+            // 값을 박싱하지 않고 토큰 버퍼의 숫자와 심볼 ID를 그대로 옮긴다.
+            int token = current - 1;
+            switch (tokens.type(token)) {
+                case TRUE: return arena.literal(ExprArena.TRUE, 0, 0);
+                case FALSE: return arena.literal(ExprArena.FALSE, 0, 0);
+                case NUMBER: return arena.literal(ExprArena.NUMBER, tokens.numbers[token], 0);
+                case STRING: return arena.literal(ExprArena.STRING, 0, tokens.symbols[token]);
+                default: return arena.literal(ExprArena.NIL, 0, 0);
+            }
+        }
+
+        @Override
+        public int column(int index) {
+            return arena.literal(ExprArena.COLUMN, 0, index);
+        }
+
+        @Override
+        public int grouping(int expression) {
+            return arena.grouping(expression);
+        }
+
+        @Override
+        public int unary(int operator, int right) {
+            return arena.unary(operator, right);
+        }
+
+        @Override
+        public int binary(int left, int operator, int right) {
+            return arena.binary(left, operator, right);
+        }
     }
 
     /**
-     * equality 규칙
-     * equality -> comparison ( ( "!=" | "==" ) comparison )* ;
-     * @return
+     * 박싱 없이 int를 쌓는 스택
      */
-    private Expr equality() {
-        Expr expr = comparison();
+    private static class IntStack {
+        private int[] items = new int[16];
+        private int size = 0;
+
+        void push(int item) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
 
-        while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
+        int pop() {
+            return items[--size];
         }
 
-        return expr;
+        int peek() {
+            return items[size - 1];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
     }
 
+    private final TokenBuffer tokens;
     /**
-     * comparison 규칙
-     * comparison -> term ( ( ">" | ">=" | "<" | "<=" ) term )* ;
-     * @return
+     * 스트리밍 모드에서 토큰을 받아오는 스캐너. 토큰을 미리 다 스캔해 두었으면 null이다.
+     */
+    private final Scanner scanner;
+    /**
+     * 에러를 기록할 세션
      */
-    private Expr comparison() {
-        Expr expr = term();
+    private final LoxSession session;
+    private int current = 0;
+    /**
+     * 식별자로 참조할 수 있는 열 이름. ColumnExpr로 파싱할 때만 주고, 평소에는 null이라 식별자는 구문 에러이다.
+     */
+    private List<String> columns = null;
 
-        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
-        }
+    public Parser(LoxSession session, TokenBuffer tokens) {
+        this.session = session;
+        this.tokens = tokens;
+        this.scanner = null;
+    }
+
+    /**
+     * 스캐너에서 토큰을 필요할 때마다 하나씩 받아오며 파싱한다.
+     * 버퍼에는 직전 토큰과 현재 토큰만 남겨두므로 소스가 커져도 토큰이 쌓이지 않는다.
+     * @param session
+     * @param scanner Reader로 만든 스트리밍 스캐너
+     */
+    public Parser(LoxSession session, Scanner scanner) {
+        this.session = session;
+        this.tokens = scanner.tokens();
+        this.scanner = scanner;
+        scanner.scanNext();
+    }
 
-        return expr;
+    /**
+     * 식별자를 열 참조로 읽도록 한다. 열 참조는 값이 ColumnExpr.Column인 Literal 노드가 되므로,
+     * 이렇게 파싱한 식은 ColumnExpr로만 평가할 수 있다.
+     * @param columns 열 이름. 목록의 순서가 열 번호가 된다.
+     * @return this
+     */
+    Parser withColumns(List<String> columns) {
+        this.columns = columns;
+        return this;
     }
 
     /**
-     * 덧셈과 뺄샘
+     * 파서를 기동하는 초기 메소드
      * @return
      */
-    private Expr term() {
-        Expr expr = factor();
+    public Expr parse() {
+        TreeSink sink = new TreeSink();
+        int root = parseRecovering(sink);
+        return root < 0 ? null : sink.root(root);
+    }
 
-        while (match(MINUS, PLUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
+    /**
+     * 식을 Expr 객체 대신 ExprArena에 파싱한다.
+     * 노드는 자식 노드를 모두 만든 뒤에 만들어지므로, 인덱스 순서가 곧 후위 순서이고 루트 노드는 arena.root()이다.
+     * 노드가 토큰 인덱스를 가리키므로 스트리밍 모드에서는 쓸 수 없다.
+     * @return 구문 에러가 있으면 null
+     */
+    ExprArena parseArena() {
+        if (scanner != null) throw new IllegalStateException("Arena parsing needs a fully scanned TokenBuffer.");
 
-        return expr;
+        ArenaSink sink = new ArenaSink();
+        return parseRecovering(sink) < 0 ? null : sink.arena;
     }
 
     /**
-     * 곱셈과 나눗셈
-     * @return
+     * 식을 파싱한다. 구문 에러가 나면 synchronize()로 다음 경계까지 건너뛰고,
+     * 남은 토큰을 계속 파싱하여 나머지 구문 에러도 한 번에 세션에 보고한다.
+     * 에러가 난 뒤에 파싱한 식은 에러를 찾는 데만 쓰고 버린다.
+     * @param sink
+     * @return 루트 노드의 핸들. 구문 에러가 있으면 -1
      */
-    private Expr factor() {
-        Expr expr = unary();
+    private int parseRecovering(NodeSink sink) {
+        boolean failed = false;
+        for (;;) {
+            try {
+                int root = expression(sink);
+                if (!failed) return root;
+            } catch (ParseError error) {
+                failed = true;
+            }
 
-        while (match(SLASH, STAR)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+            synchronize();
+            if (isAtEnd()) return -1;
         }
+    }
+
+    /**
+     * expression 규칙
+     * expression -> equality ;
+     * equality   -> comparison ( ( "!=" | "==" ) comparison )* ;
+     * comparison -> term ( ( ">" | ">=" | "<" | "<=" ) term )* ;
+     * term       -> factor ( ( "-" | "+" ) factor )* ;
+     * factor     -> unary ( ( "/" | "*" ) unary )* ;
+     * unary      -> ( "!" | "-" ) unary | primary ;
+     * primary    -> NUMBER | STRING | "true" | "false" | "nil" | "(" expression ")" ;
+     *
+     * 규칙마다 메소드를 재귀 호출하지 않고, 피연산자 스택과 연산자 스택으로 우선순위를 따져 트리를 만든다.
+     * 괄호나 단항 연산자가 아무리 깊게 중첩되어도 호출 스택은 늘어나지 않는다.
+     * @param sink 노드를 만들어 받아둘 곳
+     * @return 루트 노드의 핸들
+     */
+    private int expression(NodeSink sink) {
+        IntStack operands = new IntStack();
+        // 아직 트리로 만들지 않은 연산자의 핸들과 우선순위. 여는 괄호는 GROUP, 단항 연산자는 UNARY이다.
+        IntStack operators = new IntStack();
+        IntStack precedences = new IntStack();
+        int groups = 0;
+
+        for (;;) {
+            // 피연산자 자리: 단항 연산자와 여는 괄호를 쌓아두고 primary를 읽는다.
+            while (match(BANG, MINUS, LEFT_PAREN)) {
+                if (tokens.type(current - 1) == LEFT_PAREN) {
+                    groups++;
+                    operators.push(-1);
+                    precedences.push(GROUP);
+                } else {
+                    operators.push(sink.operator());
+                    precedences.push(UNARY);
+                }
+            }
 
-        return expr;
+            operands.push(primary(sink));
+            reduceUnary(sink, operands, operators, precedences);
+
+            // 연산자 자리: 이항 연산자가 나오면 다시 피연산자 자리로 돌아간다.
+            for (;;) {
+                int precedence = precedence(tokens.type(current));
+                if (precedence > 0) {
+                    // 같은 우선순위는 왼쪽부터 묶는다.
+                    while (isBinary(precedences) && precedences.peek() >= precedence) {
+                        reduceBinary(sink, operands, operators, precedences);
+                    }
+                    advance();
+                    operators.push(sink.operator());
+                    precedences.push(precedence);
+                    break;
+                }
+
+                if (groups == 0) {
+                    while (!precedences.isEmpty()) reduceBinary(sink, operands, operators, precedences);
+                    return operands.pop();
+                }
+
+                consume(RIGHT_PAREN, "Expect ')' after expression.");
+                while (isBinary(precedences)) reduceBinary(sink, operands, operators, precedences);
+                operators.pop();
+                precedences.pop();
+                groups--;
+
+                operands.push(sink.grouping(operands.pop()));
+                reduceUnary(sink, operands, operators, precedences);
+            }
+        }
     }
 
     /**
-     * unary 규칙: 단항 연산자
-     * unary -> ( "!" | "-" ) unary
-     *          | primary;
-     * @return
+     * 연산자 스택 위에 쌓인 단항 연산자를 모두 꺼내 마지막 피연산자에 차례로 적용한다.
      */
-    private Expr unary() {
-        if (match(BANG, MINUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
+    private static void reduceUnary(NodeSink sink, IntStack operands, IntStack operators, IntStack precedences) {
+        while (!precedences.isEmpty() && precedences.peek() == UNARY) {
+            precedences.pop();
+            operands.push(sink.unary(operators.pop(), operands.pop()));
         }
+    }
 
-        return primary();
+    /**
+     * 연산자 스택 위의 이항 연산자를 꺼내 마지막 두 피연산자를 하나로 묶는다.
+     */
+    private static void reduceBinary(NodeSink sink, IntStack operands, IntStack operators, IntStack precedences) {
+        precedences.pop();
+        int operator = operators.pop();
+        int right = operands.pop();
+        int left = operands.pop();
+        operands.push(sink.binary(left, operator, right));
     }
 
     /**
-     * primary 규칙
-     * primary -> NUMBER | STRING | "true" | "false" | "nil"
-     *            | "(" expression ")" ;
-     * @return
+     * 연산자 스택 위에 이항 연산자가 있는지 확인한다.
      */
-    private Expr primary() {
-        if (match(FALSE)) return new Expr.Literal(false);
-        if (match(TRUE)) return new Expr.Literal(true);
-        if (match(NIL)) return new Expr.Literal(null);
+    private static boolean isBinary(IntStack precedences) {
+        return !precedences.isEmpty() && precedences.peek() != GROUP && precedences.peek() != UNARY;
+    }
 
-        if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
+    /**
+     * 이항 연산자의 우선순위. 클수록 먼저 묶이고, 이항 연산자가 아니면 0이다.
+     * @param type
+     * @return
+     */
+    private static int precedence(TokenType type) {
+        switch (type) {
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                return 1;
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return 2;
+            case MINUS:
+            case PLUS:
+                return 3;
+            case SLASH:
+            case STAR:
+                return 4;
+            default:
+                return 0;
         }
+    }
 
-        if (match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
+    /**
+     * primary 규칙 중 리터럴 부분. 괄호로 묶인 식은 expression()에서 처리한다.
+     * primary -> NUMBER | STRING | "true" | "false" | "nil" ;
+     * withColumns()로 열 이름을 주었으면 IDENTIFIER도 읽는다.
+     * @param sink
+     * @return
+     */
+    private int primary(NodeSink sink) {
+        if (match(FALSE, TRUE, NIL, NUMBER, STRING)) return sink.literal();
+
+        if (columns != null && match(IDENTIFIER)) {
+            int column = columns.indexOf(previous().lexeme());
+            if (column < 0) throw error(previous(), "Unknown column.");
+            return sink.column(column);
         }
 
         throw error(peek(), "Expect expression.");
@@ -167,8 +453,11 @@ public class Parser {
      * @param message
      * @return
      */
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
@@ -181,16 +470,27 @@ public class Parser {
      */
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.types[current] == type.ordinal();
     }
 
     /**
-     * 현재 토큰을 소비하고 반환한다.
-     * @return
+     * 현재 토큰을 소비한다.
      */
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    private void advance() {
+        if (isAtEnd()) return;
+
+        if (scanner == null) {
+            current++;
+            return;
+        }
+
+        // 스트리밍 모드에서는 직전 토큰이 될 현재 토큰만 남기고 다음 토큰을 받아온다.
+        if (current == 1) {
+            tokens.dropFirst();
+        } else {
+            current = 1;
+        }
+        scanner.scanNext();
     }
 
     /**
@@ -198,7 +498,7 @@ public class Parser {
      * @return
      */
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.types[current] == EOF.ordinal();
     }
 
     /**
@@ -206,7 +506,7 @@ public class Parser {
      * @return
      */
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     /**
@@ -214,7 +514,7 @@ public class Parser {
      * @return
      */
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     /**
@@ -224,34 +524,55 @@ public class Parser {
      * @return
      */
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        session.error(token, message);
         return new ParseError();
     }
 
     /**
-     * 문장 경계를 찾을 때까지 토큰을 버린다.
+     * 다음 식의 경계를 찾을 때까지 토큰을 버린다.
      * ParseError를 처리한 후, 이 메소드를 호출하면 동기화 동작을 한다.
-     * 계단식 에러를 일으킬 수 있는 토큰을 버렸으므로, 다음 문장부터 파싱이 가능하다.
+     * 이 문법에는 문장이 없으므로, 경계는 이항 연산자나 여는 괄호 바로 뒤에서 새 피연산자가 시작하는 자리이다.
+     * 피연산자나 닫는 괄호 ")" 바로 뒤의 토큰은 앞의 식에 이어지므로, 그 뒤의 연산자를 지나 다음 피연산자까지 버린다.
+     * 경계가 없으면 파일 끝까지 버린다.
      */
     private void synchronize() {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
-
-            switch (peek().type) {
-                case CLASS:
-                case FUN:
-                case VAR:
-                case FOR:
-                case IF:
-                case WHILE:
-                case PRINT:
-                case RETURN:
-                    return;
-            }
-
+            if (startsOperand(tokens.type(current)) && !endsOperand(tokens.type(current - 1))) return;
             advance();
         }
     }
+
+    private static boolean startsOperand(TokenType type) {
+        switch (type) {
+            case NUMBER:
+            case STRING:
+            case TRUE:
+            case FALSE:
+            case NIL:
+            case IDENTIFIER:
+            case LEFT_PAREN:
+            case BANG:
+            case MINUS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean endsOperand(TokenType type) {
+        switch (type) {
+            case NUMBER:
+            case STRING:
+            case TRUE:
+            case FALSE:
+            case NIL:
+            case IDENTIFIER:
+            case RIGHT_PAREN:
+                return true;
+            default:
+                return false;
+        }
+    }
 }
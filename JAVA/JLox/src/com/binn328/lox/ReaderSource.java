@@ -0,0 +1,91 @@
+package com.binn328.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Reader에서 문자를 고정 크기 버퍼로 조금씩 읽어오는 스트리밍 소스
+ * 위치는 소스 전체에서의 위치를 그대로 쓰고, 버퍼에는 아직 필요한 부분만 남겨둔다.
+ * 렉심 하나가 버퍼보다 길 때만 버퍼가 커진다.
+ */
+class ReaderSource {
+    private final Reader reader;
+    private char[] buffer;
+    /**
+     * buffer[0]에 들어있는 문자의 위치
+     */
+    private int offset = 0;
+    /**
+     * 버퍼에 읽어둔 문자 수
+     */
+    private int limit = 0;
+    private boolean eof = false;
+
+    ReaderSource(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * index 위치의 문자가 있는지 확인한다. 버퍼에 없으면 더 읽어온다.
+     * @param index 확인할 위치
+     * @param keepFrom 버퍼를 채울 때 버리지 말아야 하는 첫 위치
+     * @return 소스가 index 앞에서 끝나면 false
+     */
+    boolean has(int index, int keepFrom) {
+        while (index - offset >= limit) {
+            if (eof) return false;
+            fill(keepFrom);
+        }
+        return true;
+    }
+
+    /**
+     * index 위치의 문자를 반환한다. has()로 먼저 읽어둔 위치여야 한다.
+     * @param index
+     * @return
+     */
+    char charAt(int index) {
+        return buffer[index - offset];
+    }
+
+    String substring(int from, int to) {
+        return new String(buffer, from - offset, to - from);
+    }
+
+    boolean regionMatches(int index, String other, int otherOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[index - offset + i] != other.charAt(otherOffset + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * keepFrom 앞의 문자를 버리고 남은 자리를 Reader에서 읽은 문자로 채운다.
+     * @param keepFrom
+     */
+    private void fill(int keepFrom) {
+        int discard = keepFrom - offset;
+        if (discard > 0) {
+            System.arraycopy(buffer, discard, buffer, 0, limit - discard);
+            limit -= discard;
+            offset = keepFrom;
+        }
+
+        // 버릴 수 있는 문자가 없는데 버퍼가 가득 찼다면 렉심 하나가 버퍼보다 긴 것이다.
+        if (limit == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+        try {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
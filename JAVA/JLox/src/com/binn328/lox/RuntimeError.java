@@ -0,0 +1,14 @@
+package com.binn328.lox;
+
+/**
+ * 실행 중에 발생한 에러를 나타낸다.
+ * 사용자에게 에러 위치를 알려주기 위해 에러를 일으킨 토큰을 함께 기록한다.
+ */
+class RuntimeError extends RuntimeException {
+    final Token token;
+
+    RuntimeError(Token token, String message) {
+        super(message);
+        this.token = token;
+    }
+}
@@ -1,18 +1,45 @@
 package com.binn328.lox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.Reader;
 import java.util.List;
-import java.util.Map;
 
 import static com.binn328.lox.TokenType.*;
 
 public class Scanner {
+    /**
+     * 스트리밍 모드에서 한 번에 읽어오는 문자 수
+     */
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    /**
+     * double로 정확히 표현되는 가장 큰 정수 2^53
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /**
+     * double로 정확히 표현되는 10의 거듭제곱 10^0 ~ 10^22
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     /**
      * 소스 코드
+     * 보통은 String이고, 메모리 맵으로 읽은 파일이면 MappedSource이다.
      */
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final CharSequence source;
+    /**
+     * 스트리밍 모드의 소스. source가 있으면 null이다.
+     */
+    private final ReaderSource input;
+    /**
+     * 스캔을 멈출 위치. 보통은 소스 코드의 길이이다.
+     */
+    private final int end;
+    private final TokenBuffer tokens;
+    /**
+     * 에러를 기록할 세션
+     */
+    private final LoxSession session;
     /**
      * 스캔 중인 렉심의 첫 번째 문자의 위치
      */
@@ -25,33 +52,51 @@ public class Scanner {
      * current가 위치한 소스 줄 번호
      */
     private int line = 1;
-    /**
-     * 예약어를 저장해두는 맵
-     */
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("ture", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
+
+    public Scanner(LoxSession session, CharSequence source) {
+        this.session = session;
+        this.source = source;
+        this.input = null;
+        this.end = source.length();
+        this.tokens = new TokenBuffer(source, session.symbols);
     }
 
-    public Scanner(String source) {
+    /**
+     * 소스 코드의 from부터 to 앞까지만 스캔하는 스캐너를 만든다.
+     * 토큰의 위치는 소스 코드 전체에서의 위치이고, 줄 번호는 line부터 센다.
+     * ParallelScanner가 소스를 나누어 스캔할 때 쓴다.
+     *
+     * @param session
+     * @param source
+     * @param from
+     * @param to
+     * @param line from이 위치한 줄 번호
+     */
+    Scanner(LoxSession session, CharSequence source, int from, int to, int line) {
+        this.session = session;
         this.source = source;
+        this.input = null;
+        this.end = to;
+        this.start = from;
+        this.current = from;
+        this.line = line;
+        this.tokens = new TokenBuffer(source, session.symbols, Math.max(16, (to - from) / 8));
+    }
+
+    /**
+     * Reader에서 문자를 조금씩 읽어오며 스캔하는 스트리밍 스캐너를 만든다.
+     * nextToken()이나 Parser(Scanner)로 토큰을 하나씩 꺼내 쓴다.
+     * ReadableByteChannel은 Channels.newReader()로 감싸서 넘기면 된다.
+     *
+     * @param session
+     * @param reader
+     */
+    public Scanner(LoxSession session, Reader reader) {
+        this.session = session;
+        this.source = null;
+        this.input = new ReaderSource(reader, STREAM_BUFFER_SIZE);
+        this.end = Integer.MAX_VALUE;
+        this.tokens = new TokenBuffer(2, session.symbols);
     }
 
     /**
@@ -60,23 +105,119 @@ public class Scanner {
      *
      * @return
      */
-    List<Token> scanTokens() {
+    TokenBuffer scanBuffer() {
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
+        start = current;
+        tokens.add(EOF, current, 0, line);
+        keepLexeme();
+        return tokens;
+    }
+
+    /**
+     * 다음 토큰 하나를 스캔하여 반환한다.
+     *
+     * @return 소스가 끝났으면 EOF 토큰
+     */
+    Token nextToken() {
+        tokens.clear();
+        scanNext();
+        return tokens.token(0);
+    }
+
+    /**
+     * 토큰이 하나 추가될 때까지 스캔한다.
+     * 소스가 끝났으면 EOF 토큰을 추가한다.
+     */
+    void scanNext() {
+        int count = tokens.count;
+        while (tokens.count == count) {
+            start = current;
+            if (isAtEnd()) {
+                tokens.add(EOF, current, 0, line);
+                keepLexeme();
+                return;
+            }
+            scanToken();
+        }
+    }
+
+    /**
+     * 스캔한 토큰이 담기는 버퍼를 반환한다.
+     *
+     * @return
+     */
+    TokenBuffer tokens() {
         return tokens;
     }
 
+    /**
+     * scanBuffer()로 스캔한 토큰들을 Token 객체 리스트로 반환한다.
+     *
+     * @return
+     */
+    List<Token> scanTokens() {
+        return scanBuffer().toList();
+    }
+
     /**
      * 문자를 모두 소비했는지 체크하는 헬퍼 메소드
      *
      * @return
      */
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !has(current);
+    }
+
+    /**
+     * index 위치에 문자가 있는지 확인한다.
+     * 스트리밍 모드에서는 필요하면 Reader에서 더 읽어온다.
+     *
+     * @param index
+     * @return
+     */
+    private boolean has(int index) {
+        if (input != null) return input.has(index, start);
+        return index < end;
+    }
+
+    /**
+     * index 위치의 문자를 반환한다.
+     *
+     * @param index
+     * @return
+     */
+    private char charAt(int index) {
+        if (input != null) return input.charAt(index);
+        return source.charAt(index);
+    }
+
+    /**
+     * from부터 to 앞까지의 소스 코드를 문자열로 잘라낸다.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    private String text(int from, int to) {
+        if (input != null) return input.substring(from, to);
+        return source.subSequence(from, to).toString();
+    }
+
+    /**
+     * from부터 to 앞까지의 소스 코드를 세션의 심볼 테이블에 등록한다.
+     * 이미 등록된 내용이면 문자열을 새로 만들지 않는다.
+     *
+     * @param from
+     * @param to
+     * @return 심볼 ID
+     */
+    private int intern(int from, int to) {
+        if (input != null) return session.symbols.intern(input.substring(from, to));
+        return session.symbols.intern(source, from, to);
     }
 
     /**
@@ -85,27 +226,25 @@ public class Scanner {
      * @return
      */
     private char advance() {
-        return source.charAt(current++);
+        return charAt(current++);
     }
 
     /**
-     * 현재 렉심의 텍스트를 가져와서 새 토큰을 만든다.
+     * 현재 렉심의 위치를 가지고 새 토큰을 추가한다.
+     * 렉심 문자열은 토큰이 실제로 읽힐 때 만들어진다.
      *
      * @param type
      */
     private void addToken(TokenType type) {
-        addToken(type, null);
+        tokens.add(type, start, current - start, line);
+        keepLexeme();
     }
 
     /**
-     * 현재 렉심의 텍스트를 가져와서 새 토큰을 만든다.
-     *
-     * @param type
-     * @param literal
+     * 스트리밍 모드에서는 버퍼가 다시 쓰이므로 방금 추가한 토큰의 렉심을 잘라둔다.
      */
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    private void keepLexeme() {
+        if (input != null) tokens.lexemes[tokens.count - 1] = text(start, current);
     }
 
     private void scanToken() {
@@ -157,7 +296,11 @@ public class Scanner {
                 if (match('/')) {
                     // 두 번째 /를 찾아도 토큰을 종료시키지 않고 줄 끝까지 문자를 소비한다.
                     // 주석은 //로 입력되기 때문에 이런 동작이 필요하다.
-                    while (peek() != '\n' && !isAtEnd()) advance();
+                    while (peek() != '\n' && !isAtEnd()) {
+                        advance();
+                        // 주석은 토큰이 되지 않으므로 스트리밍 모드의 버퍼에 붙잡아 둘 필요가 없다.
+                        start = current;
+                    }
                 } else {
                     addToken(SLASH);
                 }
@@ -182,7 +325,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    session.error(line, "Unexpected character.");
                 }
 
                 break;
@@ -195,29 +338,136 @@ public class Scanner {
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        // 식별자를 스캔한 다음, map에 포함된 예약어와 매칭되는게 하나라도 있는지 검사한다.
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        // 매칭되는 것이 있으면 TokenType을 이용, 아니면 사용자가 정의한 식별자로 처리한다.
-        if (type == null) type = IDENTIFIER;
-        addToken(type);
+        // 식별자를 스캔한 다음, 문자열을 만들지 않고 소스 코드 위에서 바로 예약어인지 검사한다.
+        TokenType type = identifierType();
+        if (type != IDENTIFIER) {
+            addToken(type);
+            return;
+        }
+
+        tokens.addSymbol(IDENTIFIER, start, current - start, line, intern(start, current));
+        keepLexeme();
+    }
+
+    /**
+     * 현재 렉심이 예약어면 그 TokenType을, 아니면 IDENTIFIER를 반환한다.
+     * 첫 글자(필요하면 두 번째 글자)로 갈래를 나누는 트라이를 switch 문으로 펼쳐 놓았다.
+     *
+     * @return
+     */
+    private TokenType identifierType() {
+        switch (charAt(start)) {
+            case 'a': return checkKeyword(1, "nd", AND);
+            case 'c': return checkKeyword(1, "lass", CLASS);
+            case 'e': return checkKeyword(1, "lse", ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'a': return checkKeyword(2, "lse", FALSE);
+                        case 'o': return checkKeyword(2, "r", FOR);
+                        case 'u': return checkKeyword(2, "n", FUN);
+                    }
+                }
+                break;
+            case 'i': return checkKeyword(1, "f", IF);
+            case 'n': return checkKeyword(1, "il", NIL);
+            case 'o': return checkKeyword(1, "r", OR);
+            case 'p': return checkKeyword(1, "rint", PRINT);
+            case 'r': return checkKeyword(1, "eturn", RETURN);
+            case 's': return checkKeyword(1, "uper", SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'h': return checkKeyword(2, "is", THIS);
+                        case 'r': return checkKeyword(2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v': return checkKeyword(1, "ar", VAR);
+            case 'w': return checkKeyword(1, "hile", WHILE);
+        }
+
+        return IDENTIFIER;
+    }
+
+    /**
+     * 렉심의 나머지 부분이 예약어의 나머지 부분과 정확히 같은지 검사한다.
+     *
+     * @param offset 이미 확인한 앞 글자 수
+     * @param rest 예약어의 나머지 부분
+     * @param type 일치할 때 반환할 TokenType
+     * @return
+     */
+    private TokenType checkKeyword(int offset, String rest, TokenType type) {
+        if (current - start == offset + rest.length()
+                && regionMatches(start + offset, rest)) {
+            return type;
+        }
+
+        return IDENTIFIER;
+    }
+
+    /**
+     * index 위치부터의 소스 코드가 text와 같은지 검사한다.
+     *
+     * @param index
+     * @param text
+     * @return
+     */
+    private boolean regionMatches(int index, String text) {
+        if (input != null) return input.regionMatches(index, text, 0, text.length());
+
+        for (int i = 0; i < text.length(); i++) {
+            if (source.charAt(index + i) != text.charAt(i)) return false;
+        }
+        return true;
     }
 
     /**
      * 숫자 리터럴을 모두 소비하는 메소드
      */
     private void number() {
-        while (isDigit(peek())) advance();
+        // 문자열을 만들지 않고, 숫자를 소비하면서 소수점을 뺀 모든 자릿수를 정수 하나로 모은다.
+        long mantissa = charAt(start) - '0';
+        while (isDigit(peek())) mantissa = appendDigit(mantissa, advance());
 
+        int fractionDigits = 0;
         // 소수부분을 peek 한다.
         if (peek() == '.' && isDigit(peekNext())) {
             // .을 소비한다.
             advance();
 
-            while (isDigit(peek())) advance();
+            while (isDigit(peek())) {
+                mantissa = appendDigit(mantissa, advance());
+                fractionDigits++;
+            }
+        }
+
+        double value;
+        if (mantissa >= 0 && fractionDigits < POWERS_OF_TEN.length) {
+            // 두 값 모두 double로 정확히 표현되므로, 나눗셈 한 번의 반올림 결과가 곧 올바른 값이다.
+            value = mantissa / POWERS_OF_TEN[fractionDigits];
+        } else {
+            // 유효 숫자가 너무 길면 일반 경로로 정확하게 변환한다.
+            value = Double.parseDouble(text(start, current));
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        tokens.addNumber(start, current - start, line, value);
+        keepLexeme();
+    }
+
+    /**
+     * 지금까지 모은 정수 뒤에 숫자 하나를 붙인다.
+     *
+     * @param mantissa 지금까지 모은 정수. 이미 너무 커졌으면 -1
+     * @param digit
+     * @return 2^53을 넘으면 -1
+     */
+    private static long appendDigit(long mantissa, char digit) {
+        if (mantissa < 0) return -1;
+
+        mantissa = mantissa * 10 + (digit - '0');
+        return mantissa <= MAX_EXACT_MANTISSA ? mantissa : -1;
     }
 
     /**
@@ -232,16 +482,16 @@ public class Scanner {
 
         // 문자열이 닫히기 전에 문자가 소진되면 에러를 출력한다.
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            session.error(line, "Unterminated string.");
             return;
         }
 
         // 닫는 "를 처리
         advance();
 
-        // 문자열 앞 뒤에 존재하는 ""를 제거하고 토큰을 추가한다.
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        // 문자열 앞 뒤에 존재하는 ""를 뺀 값을 심볼 테이블에 등록한다.
+        tokens.addSymbol(STRING, start, current - start, line, intern(start + 1, current - 1));
+        keepLexeme();
     }
 
     /**
@@ -252,7 +502,7 @@ public class Scanner {
      */
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (charAt(current) != expected) return false;
 
         current++;
         return true;
@@ -265,7 +515,7 @@ public class Scanner {
      */
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return charAt(current);
     }
 
     /**
@@ -274,8 +524,8 @@ public class Scanner {
      * @return
      */
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (!has(current + 1)) return '\0';
+        return charAt(current + 1);
     }
 
     /**
@@ -0,0 +1,114 @@
+package com.binn328.lox;
+
+import java.util.Arrays;
+
+/**
+ * 식별자와 문자열 리터럴의 내용을 작은 정수 ID로 바꾸어 한 번만 저장하는 심볼 테이블
+ * 같은 이름이나 문자열은 몇 번 나오든 같은 ID와 같은 String 객체를 쓰므로,
+ * 이후 단계는 String.equals() 대신 ID를 ==로 비교할 수 있다.
+ * 세션마다 하나씩 두며, 세션과 같이 한 번에 한 스레드에서만 쓴다.
+ */
+class SymbolTable {
+    /**
+     * 심볼이 없는 토큰의 ID
+     */
+    static final int NONE = -1;
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int count = 0;
+    /**
+     * 열린 주소법 해시 테이블. 각 칸에는 ID + 1을 담고, 0은 빈 칸이다.
+     */
+    private int[] slots = new int[128];
+
+    /**
+     * text의 start부터 end 앞까지의 내용을 심볼로 등록하고 ID를 반환한다.
+     * 이미 등록된 내용이면 문자열을 새로 만들지 않는다.
+     * @param text
+     * @param start
+     * @param end
+     * @return
+     */
+    int intern(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) break;
+            if (hashes[id] == hash && contentEquals(names[id], text, start, end)) return id;
+        }
+
+        return add(text.subSequence(start, end).toString(), hash);
+    }
+
+    int intern(String text) {
+        return intern(text, 0, text.length());
+    }
+
+    /**
+     * ID에 해당하는 문자열을 반환한다. 같은 ID면 항상 같은 String 객체이다.
+     * @param id
+     * @return
+     */
+    String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * 등록된 심볼 수
+     * @return
+     */
+    int size() {
+        return count;
+    }
+
+    private int add(String name, int hash) {
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        int id = count++;
+        names[id] = name;
+        hashes[id] = hash;
+
+        // 테이블을 절반 이하로만 채운다.
+        if (count * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insert(id);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int id = 0; id < count; id++) insert(id);
+    }
+
+    private void insert(int id) {
+        int mask = slots.length - 1;
+        int slot = spread(hashes[id]) & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = id + 1;
+    }
+
+    /**
+     * 아래쪽 비트만 쓰는 테이블에서도 위쪽 비트가 반영되도록 섞는다.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean contentEquals(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package com.binn328.lox;
+
+/**
+ * 처음에는 Interpreter로 평가하다가, 평가 횟수가 문턱값에 닿으면 Jit으로 컴파일하여 그 뒤로는 컴파일한 코드로 평가하는 식
+ * 한 번만 평가할 식에는 클래스를 정의하는 비용을 들이지 않는다.
+ * 여러 스레드에서 함께 써도 된다. 횟수는 동기화하지 않으므로 조금 늦게 컴파일될 수는 있지만, 컴파일은 한 번만 한다.
+ */
+class TieredExpr {
+    /**
+     * --jit에 횟수를 주지 않았을 때의 문턱값
+     */
+    static final int DEFAULT_THRESHOLD = 1000;
+
+    final Expr expression;
+    private final int threshold;
+    private int invocations = 0;
+    private volatile Jit.Compiled compiled = null;
+    /**
+     * 컴파일을 시도했으면 true. 식이 너무 커서 컴파일하지 못했으면 계속 Interpreter로 평가한다.
+     */
+    private volatile boolean attempted = false;
+
+    /**
+     * @param expression
+     * @param threshold 이만큼 평가한 뒤에 컴파일한다. 0이면 처음부터 컴파일한 코드로 평가한다.
+     */
+    TieredExpr(Expr expression, int threshold) {
+        if (threshold < 0) throw new IllegalArgumentException("Threshold must not be negative.");
+
+        this.expression = expression;
+        this.threshold = threshold;
+    }
+
+    /**
+     * 식을 평가한다. 타입이 맞지 않으면 Interpreter와 같은 토큰과 메시지로 RuntimeError를 던진다.
+     * @param interpreter 아직 컴파일하지 않았을 때 쓸 인터프리터
+     * @return
+     */
+    Object evaluate(Interpreter interpreter) {
+        Jit.Compiled code = compiled;
+        if (code != null) return code.evaluate();
+
+        if (!attempted) {
+            if (invocations < threshold) {
+                invocations++;
+            } else {
+                code = compile();
+                if (code != null) return code.evaluate();
+            }
+        }
+        return interpreter.evaluate(expression);
+    }
+
+    /**
+     * @return 컴파일했으면 true
+     */
+    boolean isCompiled() {
+        return compiled != null;
+    }
+
+    private synchronized Jit.Compiled compile() {
+        if (!attempted) {
+            compiled = Jit.compile(expression);
+            attempted = true;
+        }
+        return compiled;
+    }
+}
@@ -2,21 +2,70 @@ package com.binn328.lox;
 
 /**
  * 에러 정보를 전파하기 위해 토큰의 위치정보를 기록해야한다.
+ * 스캐너가 만든 토큰은 렉심 문자열 대신 소스 코드 안의 위치만 기억하고,
+ * 렉심이 실제로 필요해질 때 문자열을 만든다.
  */
 public class Token {
     final TokenType type;
-    final String lexeme;
     final Object literal;
     final int line;
+    /**
+     * 렉심이 들어있는 소스 코드
+     */
+    private final CharSequence source;
+    /**
+     * 소스 코드 안에서 렉심이 시작하는 위치
+     */
+    final int start;
+    /**
+     * 렉심의 길이
+     */
+    final int length;
+    /**
+     * 식별자와 문자열 리터럴의 심볼 ID. 같은 이름이나 문자열이면 ID가 같다.
+     * 다른 종류의 토큰이면 SymbolTable.NONE이다.
+     */
+    final int symbol;
+    /**
+     * 처음 읽을 때 만들어지는 렉심 문자열
+     */
+    private String lexeme;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, SymbolTable.NONE);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.source = lexeme;
+        this.start = 0;
+        this.length = lexeme.length();
+        this.symbol = symbol;
+    }
+
+    Token(TokenType type, CharSequence source, int start, int length, Object literal, int line, int symbol) {
+        this.type = type;
+        this.source = source;
+        this.start = start;
+        this.length = length;
+        this.literal = literal;
+        this.line = line;
+        this.symbol = symbol;
+    }
+
+    /**
+     * 렉심 문자열을 반환한다. 처음 호출될 때만 소스 코드에서 잘라낸다.
+     * @return
+     */
+    String lexeme() {
+        if (lexeme == null) lexeme = source.subSequence(start, start + length).toString();
+        return lexeme;
     }
 
     public String toString() {
-        return type + " " + lexeme + " " + literal;
+        return type + " " + lexeme() + " " + literal;
     }
 }
@@ -0,0 +1,264 @@
+package com.binn328.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 스캐너가 만든 토큰들을 토큰마다 객체를 만들지 않고 필드별 배열에 나누어 저장한다.
+ * i번째 토큰의 정보는 각 배열의 i번째 칸에 들어있다.
+ * Token 객체가 필요하면 token()으로 그때그때 만든다.
+ */
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    /**
+     * 토큰들이 가리키는 소스 코드
+     */
+    final CharSequence source;
+    /**
+     * symbols의 ID를 문자열로 바꿀 때 쓰는 세션의 심볼 테이블
+     */
+    final SymbolTable symbolTable;
+    /**
+     * TokenType의 ordinal
+     */
+    byte[] types;
+    /**
+     * 소스 코드 안에서 렉심이 시작하는 위치
+     */
+    int[] starts;
+    int[] lengths;
+    int[] lines;
+    /**
+     * NUMBER 토큰의 값. 다른 종류의 토큰에서는 쓰지 않는다.
+     */
+    double[] numbers;
+    /**
+     * IDENTIFIER, STRING 토큰의 심볼 ID. 다른 종류의 토큰에서는 SymbolTable.NONE이다.
+     * 문자열 리터럴의 ID는 앞 뒤의 ""를 뺀 내용의 ID이다.
+     */
+    int[] symbols;
+    /**
+     * 스트리밍 모드에서 각 토큰의 렉심
+     * 소스 코드 문자열이 없으므로 토큰을 추가할 때 잘라둔다.
+     */
+    String[] lexemes;
+    /**
+     * 저장된 토큰 수
+     */
+    int count = 0;
+    /**
+     * 반복되는 숫자 상수가 같은 Double 객체를 쓰도록 최근에 박싱한 값을 담아두는 직접 사상 캐시
+     */
+    private final Double[] boxes = new Double[256];
+
+    TokenBuffer(CharSequence source, SymbolTable symbolTable) {
+        // 소스 코드 여덟 글자당 토큰 하나 정도로 어림잡아 시작한다.
+        this(source, symbolTable, Math.max(16, source.length() / 8));
+    }
+
+    /**
+     * 처음부터 capacity개의 토큰을 담을 수 있는 버퍼를 만든다.
+     * @param source
+     * @param symbolTable
+     * @param capacity
+     */
+    TokenBuffer(CharSequence source, SymbolTable symbolTable, int capacity) {
+        this.source = source;
+        this.symbolTable = symbolTable;
+
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        numbers = new double[capacity];
+        symbols = new int[capacity];
+    }
+
+    /**
+     * 스트리밍 스캐너가 쓰는 작은 토큰 창을 만든다.
+     * @param capacity
+     */
+    TokenBuffer(int capacity, SymbolTable symbolTable) {
+        this.source = null;
+        this.symbolTable = symbolTable;
+
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        numbers = new double[capacity];
+        symbols = new int[capacity];
+        lexemes = new String[capacity];
+    }
+
+    /**
+     * 토큰을 하나 덧붙인다.
+     * @param type
+     * @param start
+     * @param length
+     * @param line
+     */
+    void add(TokenType type, int start, int length, int line) {
+        if (count == types.length) grow();
+
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        symbols[count] = SymbolTable.NONE;
+        count++;
+    }
+
+    /**
+     * NUMBER 토큰을 값과 함께 덧붙인다.
+     * @param start
+     * @param length
+     * @param line
+     * @param value
+     */
+    void addNumber(int start, int length, int line, double value) {
+        add(TokenType.NUMBER, start, length, line);
+        numbers[count - 1] = value;
+    }
+
+    /**
+     * IDENTIFIER나 STRING 토큰을 심볼 ID와 함께 덧붙인다.
+     * @param type
+     * @param start
+     * @param length
+     * @param line
+     * @param symbol
+     */
+    void addSymbol(TokenType type, int start, int length, int line, int symbol) {
+        add(type, start, length, line);
+        symbols[count - 1] = symbol;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    /**
+     * index번째 토큰의 리터럴 값을 반환한다.
+     * 문자열 리터럴은 심볼 테이블에 하나만 저장된 String을 돌려준다.
+     * @param index
+     * @return
+     */
+    Object literal(int index) {
+        switch (type(index)) {
+            case NUMBER:
+                return box(numbers[index]);
+            case STRING:
+                return symbolTable.name(symbols[index]);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 숫자를 박싱한다. 같은 값을 최근에 박싱했으면 그 객체를 다시 쓴다.
+     * @param value
+     * @return
+     */
+    private Double box(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        int hash = (int) (bits ^ (bits >>> 32));
+        int slot = (hash ^ (hash >>> 16)) & (boxes.length - 1);
+
+        Double box = boxes[slot];
+        if (box != null && Double.doubleToRawLongBits(box) == bits) return box;
+
+        box = value;
+        boxes[slot] = box;
+        return box;
+    }
+
+    /**
+     * index번째 토큰을 Token 객체로 만든다.
+     * @param index
+     * @return
+     */
+    Token token(int index) {
+        if (source == null) {
+            return new Token(type(index), lexemes[index], literal(index), lines[index], symbols[index]);
+        }
+        return new Token(type(index), source, starts[index], lengths[index], literal(index), lines[index],
+                symbols[index]);
+    }
+
+    /**
+     * 모든 토큰을 Token 객체 리스트로 만든다.
+     * @return
+     */
+    List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tokens.add(token(i));
+        }
+        return tokens;
+    }
+
+    /**
+     * other의 앞쪽 토큰 length개를 이어 붙인다.
+     * other가 다른 심볼 테이블로 스캔한 버퍼이면 symbolMap으로 심볼 ID를 이 버퍼의 ID로 바꾼다.
+     * @param other
+     * @param length
+     * @param symbolMap other의 심볼 ID를 인덱스로 하는 이 버퍼의 심볼 ID
+     */
+    void addAll(TokenBuffer other, int length, int[] symbolMap) {
+        while (count + length > types.length) grow();
+
+        System.arraycopy(other.types, 0, types, count, length);
+        System.arraycopy(other.starts, 0, starts, count, length);
+        System.arraycopy(other.lengths, 0, lengths, count, length);
+        System.arraycopy(other.lines, 0, lines, count, length);
+        System.arraycopy(other.numbers, 0, numbers, count, length);
+        for (int i = 0; i < length; i++) {
+            int symbol = other.symbols[i];
+            symbols[count + i] = symbol == SymbolTable.NONE ? symbol : symbolMap[symbol];
+        }
+        count += length;
+    }
+
+    /**
+     * 첫 번째 토큰을 버리고 나머지를 한 칸씩 앞으로 당긴다.
+     */
+    void dropFirst() {
+        count--;
+        System.arraycopy(types, 1, types, 0, count);
+        System.arraycopy(starts, 1, starts, 0, count);
+        System.arraycopy(lengths, 1, lengths, 0, count);
+        System.arraycopy(lines, 1, lines, 0, count);
+        System.arraycopy(numbers, 1, numbers, 0, count);
+        System.arraycopy(symbols, 1, symbols, 0, count);
+        if (lexemes != null) {
+            System.arraycopy(lexemes, 1, lexemes, 0, count);
+            lexemes[count] = null;
+        }
+    }
+
+    /**
+     * 저장된 토큰을 모두 버린다.
+     */
+    void clear() {
+        if (lexemes != null) Arrays.fill(lexemes, 0, count, null);
+        count = 0;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+        if (lexemes != null) lexemes = Arrays.copyOf(lexemes, capacity);
+    }
+}
@@ -0,0 +1,207 @@
+package com.binn328.lox;
+
+import java.util.Arrays;
+
+/**
+ * 바이트코드 청크를 실행하는 스택 가상 머신
+ * 숫자는 double[] 스택에 그대로 두고, values 스택의 해당 칸에는 NUMBER 표시만 남겨
+ * 연산마다 Double 객체를 만들지 않는다.
+ */
+class VM {
+    /**
+     * 이 칸의 값이 numbers 스택에 있음을 나타내는 표시
+     */
+    private static final Object NUMBER = new Object();
+
+    private Object[] values = new Object[16];
+    private double[] numbers = new double[16];
+    /**
+     * 결과를 출력하고 에러를 기록할 세션
+     */
+    private final LoxSession session;
+
+    VM(LoxSession session) {
+        this.session = session;
+    }
+
+    /**
+     * 청크를 실행하고 결과를 화면에 출력한다.
+     * @param chunk
+     */
+    void interpret(Chunk chunk) {
+        try {
+            Object value = run(chunk);
+            session.out.println(Interpreter.stringify(value));
+        } catch (RuntimeError error) {
+            session.runtimeError(error);
+        }
+    }
+
+    /**
+     * 청크를 실행하고 결과를 반환한다.
+     * @param chunk
+     * @return
+     */
+    Object run(Chunk chunk) {
+        if (values.length < chunk.maxStack) {
+            values = new Object[chunk.maxStack];
+            numbers = new double[chunk.maxStack];
+        }
+
+        byte[] code = chunk.code;
+        Object[] values = this.values;
+        double[] numbers = this.numbers;
+        int sp = 0;
+        int ip = 0;
+
+        for (;;) {
+            byte instruction = code[ip++];
+            switch (instruction) {
+                case OpCode.CONSTANT: {
+                    push(values, numbers, sp++, chunk.constants.get(code[ip++] & 0xff));
+                    break;
+                }
+                case OpCode.CONSTANT_LONG: {
+                    int index = (code[ip] & 0xff) << 16 | (code[ip + 1] & 0xff) << 8 | (code[ip + 2] & 0xff);
+                    ip += 3;
+                    push(values, numbers, sp++, chunk.constants.get(index));
+                    break;
+                }
+                case OpCode.NIL: values[sp++] = null; break;
+                case OpCode.TRUE: values[sp++] = true; break;
+                case OpCode.FALSE: values[sp++] = false; break;
+                case OpCode.EQUAL: {
+                    sp--;
+                    values[sp - 1] = isEqual(values, numbers, sp - 1, sp);
+                    break;
+                }
+                case OpCode.GREATER: {
+                    sp--;
+                    checkNumberOperands(chunk, ip, values, sp - 1, sp);
+                    values[sp - 1] = numbers[sp - 1] > numbers[sp];
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    sp--;
+                    checkNumberOperands(chunk, ip, values, sp - 1, sp);
+                    values[sp - 1] = numbers[sp - 1] >= numbers[sp];
+                    break;
+                }
+                case OpCode.LESS: {
+                    sp--;
+                    checkNumberOperands(chunk, ip, values, sp - 1, sp);
+                    values[sp - 1] = numbers[sp - 1] < numbers[sp];
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    sp--;
+                    checkNumberOperands(chunk, ip, values, sp - 1, sp);
+                    values[sp - 1] = numbers[sp - 1] <= numbers[sp];
+                    break;
+                }
+                case OpCode.ADD: {
+                    sp--;
+                    if (values[sp - 1] == NUMBER && values[sp] == NUMBER) {
+                        numbers[sp - 1] += numbers[sp];
+                    } else if (values[sp - 1] instanceof String && values[sp] instanceof String) {
+                        values[sp - 1] = (String) values[sp - 1] + (String) values[sp];
+                    } else {
+                        throw new RuntimeError(operator(chunk, ip - 1),
+                                "Operands must be two numbers or two strings.");
+                    }
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    sp--;
+                    checkNumberOperands(chunk, ip, values, sp - 1, sp);
+                    numbers[sp - 1] -= numbers[sp];
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    sp--;
+                    checkNumberOperands(chunk, ip, values, sp - 1, sp);
+                    numbers[sp - 1] *= numbers[sp];
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    sp--;
+                    checkNumberOperands(chunk, ip, values, sp - 1, sp);
+                    numbers[sp - 1] /= numbers[sp];
+                    break;
+                }
+                case OpCode.NOT: {
+                    values[sp - 1] = values[sp - 1] != NUMBER && !Interpreter.isTruthy(values[sp - 1]);
+                    break;
+                }
+                case OpCode.NEGATE: {
+                    if (values[sp - 1] != NUMBER) {
+                        throw new RuntimeError(operator(chunk, ip - 1), "Operand must be a number.");
+                    }
+                    numbers[sp - 1] = -numbers[sp - 1];
+                    break;
+                }
+                case OpCode.RETURN: {
+                    // 결과를 돌려줄 때 한 번만 박싱한다.
+                    Object result = values[sp - 1] == NUMBER ? (Object) numbers[sp - 1] : values[sp - 1];
+                    // 다음 실행까지 값을 붙잡고 있지 않도록 스택을 비운다.
+                    Arrays.fill(values, 0, sp, null);
+                    return result;
+                }
+                default:
+                    throw new IllegalStateException("Unknown opcode " + instruction + ".");
+            }
+        }
+    }
+
+    /**
+     * 값을 스택에 넣는다. 숫자는 numbers 스택에 박싱을 풀어 넣는다.
+     */
+    private static void push(Object[] values, double[] numbers, int slot, Object value) {
+        if (value instanceof Double) {
+            values[slot] = NUMBER;
+            numbers[slot] = (double) value;
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * 두 칸의 값이 같은지 비교한다. Interpreter.isEqual()과 같이 Double.equals() 규칙을 따른다.
+     */
+    private static boolean isEqual(Object[] values, double[] numbers, int a, int b) {
+        if (values[a] == NUMBER && values[b] == NUMBER) {
+            return Double.doubleToLongBits(numbers[a]) == Double.doubleToLongBits(numbers[b]);
+        }
+        if (values[a] == NUMBER || values[b] == NUMBER) return false;
+
+        return Interpreter.isEqual(values[a], values[b]);
+    }
+
+    private static void checkNumberOperands(Chunk chunk, int ip, Object[] values, int left, int right) {
+        if (values[left] == NUMBER && values[right] == NUMBER) return;
+
+        throw new RuntimeError(operator(chunk, ip - 1), "Operands must be numbers.");
+    }
+
+    /**
+     * 청크에는 줄 번호만 남기므로, 에러를 낸 명령어의 연산자 토큰을 다시 만든다.
+     * @param chunk
+     * @param offset 에러를 낸 명령어의 위치
+     * @return
+     */
+    private static Token operator(Chunk chunk, int offset) {
+        int line = chunk.line(offset);
+        switch (chunk.code[offset]) {
+            case OpCode.GREATER: return new Token(TokenType.GREATER, ">", null, line);
+            case OpCode.GREATER_EQUAL: return new Token(TokenType.GREATER_EQUAL, ">=", null, line);
+            case OpCode.LESS: return new Token(TokenType.LESS, "<", null, line);
+            case OpCode.LESS_EQUAL: return new Token(TokenType.LESS_EQUAL, "<=", null, line);
+            case OpCode.ADD: return new Token(TokenType.PLUS, "+", null, line);
+            case OpCode.SUBTRACT:
+            case OpCode.NEGATE: return new Token(TokenType.MINUS, "-", null, line);
+            case OpCode.MULTIPLY: return new Token(TokenType.STAR, "*", null, line);
+            case OpCode.DIVIDE: return new Token(TokenType.SLASH, "/", null, line);
+            default: throw new IllegalStateException("Unexpected opcode " + chunk.code[offset] + ".");
+        }
+    }
+}
@@ -9,65 +9,112 @@ import java.util.List;
  * 클래스 정의, 필드 선언, 생성자, 초기자의 작성을 자동화해주는 스크립트
  */
 public class GenerateAst {
+    /**
+     * Visitor<R>와 함께 만드는, 기본 타입을 반환하는 visitor의 이름과 반환 타입
+     */
+    private static final String[][] PRIMITIVE_VISITORS = {
+            {"DoubleVisitor", "double"},
+            {"BooleanVisitor", "boolean"},
+    };
+
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.err.println("Usage: generate_ast <output directory>");
+        // 기본 타입 visitor는 DispatchBenchmark만 쓰므로 빼고 만들 수 있다. 종류 태그는 인터프리터들이 쓰므로 항상 만든다.
+        boolean primitiveVisitors = !(args.length == 2 && args[0].equals("--no-primitive-visitors"));
+        if (args.length != 1 && primitiveVisitors) {
+            System.err.println("Usage: generate_ast [--no-primitive-visitors] <output directory>");
             System.exit(64);
         }
-        String outputDir = args[0];
+        String outputDir = args[args.length - 1];
         // 타입과 필드에 대한 설명을 작성한다.
-        defineAst(outputDir, "Expr", Arrays.asList(
+        List<String> exprTypes = Arrays.asList(
                 "Binary     : Expr left, Token operator, Expr right",
                 "Grouping   : Expr expression",
                 "Literal    : Object value",
                 "Unary      : Token operator, Expr right"
-        ));
+        );
+        defineAst(outputDir, "Expr", exprTypes, primitiveVisitors);
+        defineArena(outputDir, "Expr", exprTypes);
     }
 
     /**
      * 베이스 클래스 Expr 클래스를 출력한다.
+     * 노드마다 byte 종류 태그를 달고, primitiveVisitors가 true면 double과 boolean을 반환하는 visitor도 만든다.
+     * 자주 도는 코드는 태그로 switch하거나 기본 타입 visitor를 써서 인터페이스 호출과 박싱을 피할 수 있다.
      * @param outputDir
      * @param baseName
      * @param types
+     * @param primitiveVisitors
      * @throws IOException
      */
-    private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
+    private static void defineAst(String outputDir, String baseName, List<String> types, boolean primitiveVisitors)
+            throws IOException {
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, "UTF-8");
 
         writer.println("package com.binn328.lox;");
         writer.println();
-        writer.println("import java.util.List;");
+        writer.println("public abstract class " + baseName + " {");
+
+        // 노드 종류 태그
+        for (int i = 0; i < types.size(); i++) {
+            String typeName = types.get(i).split(":")[0].trim();
+            writer.println("    static final byte " + typeName.toUpperCase() + " = " + i + ";");
+        }
         writer.println();
-        writer.println("abstract class " + baseName + " {");
 
         // visitor 인터페이스를 정의한다.
-        defineVisitor(writer, baseName, types);
+        defineVisitor(writer, baseName, types, "Visitor<R>", "R");
+        if (primitiveVisitors) {
+            for (String[] visitor : PRIMITIVE_VISITORS) {
+                writer.println();
+                defineVisitor(writer, baseName, types, visitor[0], visitor[1]);
+            }
+        }
+
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * 노드의 종류. 이 값으로 switch하면 가상 호출 없이 노드를 구분할 수 있다.");
+        writer.println("     */");
+        writer.println("    final byte kind;");
+        writer.println();
+        writer.println("    " + baseName + "(byte kind) {");
+        writer.println("        this.kind = kind;");
+        writer.println("    }");
 
         // AST 클래스
         for (String type : types) {
             String className = type.split(":")[0].trim();
             String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            writer.println();
+            defineType(writer, baseName, className, fields, primitiveVisitors);
         }
 
         // base accept() 메소드
         writer.println();
-        writer.println("  abstract <R> R accept(Visitor<R> visitor);");
+        writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        if (primitiveVisitors) {
+            for (String[] visitor : PRIMITIVE_VISITORS) {
+                writer.println();
+                writer.println("    abstract " + visitor[1] + " accept(" + visitor[0] + " visitor);");
+            }
+        }
 
         writer.println("}");
         writer.close();
     }
 
-    private static void defineVisitor(PrintWriter writer, String baseName, List<String> types) {
-        writer.println("  interface Visitor<R> {");
+    private static void defineVisitor(PrintWriter writer, String baseName, List<String> types,
+                                      String visitorName, String returnType) {
+        writer.println("    interface " + visitorName + " {");
 
-        for (String type: types) {
-            String typeName = type.split(":")[0].trim();
-            writer.println("    R visit" + typeName + baseName + "(" + typeName + " " + baseName.toLowerCase() + ");");
+        for (int i = 0; i < types.size(); i++) {
+            String typeName = types.get(i).split(":")[0].trim();
+            if (i > 0) writer.println();
+            writer.println("        " + returnType + " visit" + typeName + baseName
+                    + "(" + typeName + " " + baseName.toLowerCase() + ");");
         }
 
-        writer.println("  }");
+        writer.println("    }");
     }
 
     /**
@@ -76,36 +123,258 @@ public class GenerateAst {
      * @param baseName
      * @param className
      * @param fieldList
+     * @param primitiveVisitors
      */
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
-        writer.println("  static class " + className + " extends " + baseName + " {");
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+                                   boolean primitiveVisitors) {
+        writer.println("    static class " + className + " extends " + baseName + " {");
 
         // 생성자
-        writer.println("    " + className + "(" + fieldList + ") {");
+        writer.println("        " + className + "(" + fieldList + ") {");
+        writer.println("            super(" + className.toUpperCase() + ");");
 
         // 매개변수를 필드에 저장
         String[] fields = fieldList.split(", ");
         for (String field : fields) {
             String name = field.split(" ")[1];
-            writer.println("    this." + name + " = " + name + ";");
+            writer.println("            this." + name + " = " + name + ";");
         }
 
-        writer.println("  }");
+        writer.println("        }");
 
         // visitor 패턴
         writer.println();
-        writer.println("    @Override");
-        writer.println("    <R> R accept(Visitor<R> visitor) {");
-        writer.println("      return visitor.visit" + className + baseName + "(this);");
-        writer.println("    }");
+        writer.println("        @Override");
+        writer.println("        <R> R accept(Visitor<R> visitor) {");
+        writer.println("            return visitor.visit" + className + baseName + "(this);");
+        writer.println("        }");
+        if (primitiveVisitors) {
+            for (String[] visitor : PRIMITIVE_VISITORS) {
+                writer.println();
+                writer.println("        @Override");
+                writer.println("        " + visitor[1] + " accept(" + visitor[0] + " visitor) {");
+                writer.println("            return visitor.visit" + className + baseName + "(this);");
+                writer.println("        }");
+            }
+        }
 
         // 필드
         writer.println();
         for (String field : fields) {
-            writer.println("    final " + field + ";");
+            writer.println("        final " + field + ";");
+        }
+
+        writer.println("    }");
+    }
+
+    /**
+     * 같은 타입 설명으로 노드를 필드별 배열에 담는 아레나 클래스(ExprArena)를 출력한다.
+     * baseName 타입 필드는 lefts, rights 순서로 자식 노드의 인덱스를 담고,
+     * Token 필드는 refs에 토큰 인덱스를 담는다.
+     * Object 필드는 박싱하지 않도록 값의 종류를 tags에 두고, 숫자는 numbers에, 문자열의 심볼 ID나 열 번호는 refs에 담는다.
+     * @param outputDir
+     * @param baseName
+     * @param types
+     * @throws IOException
+     */
+    private static void defineArena(String outputDir, String baseName, List<String> types) throws IOException {
+        String className = baseName + "Arena";
+        String path = outputDir + "/" + className + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package com.binn328.lox;");
+        writer.println();
+        writer.println("import java.util.Arrays;");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * " + baseName + " 구문 트리를 노드마다 객체를 만들지 않고 필드별 배열에 나누어 저장하는 아레나");
+        writer.println(" * 노드는 배열의 인덱스로 가리키고, 한 번의 파싱이 만든 노드는 모두 이 아레나 하나에 들어간다.");
+        writer.println(" * GenerateAst가 " + baseName + "와 같은 타입 설명으로 만든 파일이다.");
+        writer.println(" */");
+        writer.println("class " + className + " {");
+
+        // 노드 종류
+        for (int i = 0; i < types.size(); i++) {
+            String typeName = types.get(i).split(":")[0].trim();
+            writer.println("    static final byte " + typeName.toUpperCase() + " = " + i + ";");
+        }
+
+        // Object 필드 값의 종류
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * Object 필드 값의 종류. tags에 담는다.");
+        writer.println("     */");
+        String[] valueTags = {"NIL", "FALSE", "TRUE", "NUMBER", "STRING", "COLUMN"};
+        for (int i = 0; i < valueTags.length; i++) {
+            writer.println("    static final byte " + valueTags[i] + " = " + i + ";");
+        }
+
+        // 인덱스를 받는 visitor 인터페이스
+        writer.println();
+        writer.println("    interface Visitor<R> {");
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println("        R visit" + typeName + baseName + "(int " + baseName.toLowerCase() + ");");
+        }
+        writer.println("    }");
+
+        // 필드별 배열
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * refs에 담긴 토큰 인덱스가 가리키는 토큰 버퍼");
+        writer.println("     */");
+        writer.println("    final TokenBuffer tokens;");
+        writer.println("    byte[] kinds;");
+        writer.println("    int[] lefts;");
+        writer.println("    int[] rights;");
+        writer.println("    int[] refs;");
+        writer.println("    /**");
+        writer.println("     * Object 필드 값의 종류(NIL ~ COLUMN)와 NUMBER 값. STRING의 심볼 ID와 COLUMN의 열 번호는 refs에 둔다.");
+        writer.println("     */");
+        writer.println("    byte[] tags;");
+        writer.println("    double[] numbers;");
+        writer.println("    /**");
+        writer.println("     * 저장된 노드 수");
+        writer.println("     */");
+        writer.println("    int count = 0;");
+
+        // 생성자
+        writer.println();
+        writer.println("    " + className + "(TokenBuffer tokens) {");
+        writer.println("        this.tokens = tokens;");
+        writer.println();
+        writer.println("        // 노드 수는 토큰 수를 넘지 않는 경우가 대부분이다.");
+        writer.println("        int capacity = Math.max(16, tokens.count);");
+        writer.println("        kinds = new byte[capacity];");
+        writer.println("        lefts = new int[capacity];");
+        writer.println("        rights = new int[capacity];");
+        writer.println("        refs = new int[capacity];");
+        writer.println("        tags = new byte[capacity];");
+        writer.println("        numbers = new double[capacity];");
+        writer.println("    }");
+
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            String[] fields = type.split(":")[1].trim().split(", ");
+            defineArenaType(writer, baseName, typeName, fields);
+        }
+
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * 마지막으로 만든 노드. 자식 노드를 먼저 만들어야 하므로 파서가 만든 아레나에서는 루트 노드이다.");
+        writer.println("     * @return");
+        writer.println("     */");
+        writer.println("    int root() {");
+        writer.println("        return count - 1;");
+        writer.println("    }");
+
+        // accept
+        writer.println();
+        writer.println("    <R> R accept(int " + baseName.toLowerCase() + ", Visitor<R> visitor) {");
+        writer.println("        switch (kinds[" + baseName.toLowerCase() + "]) {");
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println("            case " + typeName.toUpperCase() + ": return visitor.visit"
+                    + typeName + baseName + "(" + baseName.toLowerCase() + ");");
         }
+        writer.println("        }");
+        writer.println("        throw new IllegalStateException(\"Unknown node kind \" + kinds["
+                + baseName.toLowerCase() + "] + \".\");");
+        writer.println("    }");
 
-        writer.println("  }");
+        // 배열 관리
+        writer.println();
+        writer.println("    private int add(byte kind) {");
+        writer.println("        if (count == kinds.length) grow();");
+        writer.println("        kinds[count] = kind;");
+        writer.println("        return count++;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private void grow() {");
+        writer.println("        int capacity = kinds.length * 2;");
+        writer.println("        kinds = Arrays.copyOf(kinds, capacity);");
+        writer.println("        lefts = Arrays.copyOf(lefts, capacity);");
+        writer.println("        rights = Arrays.copyOf(rights, capacity);");
+        writer.println("        refs = Arrays.copyOf(refs, capacity);");
+        writer.println("        tags = Arrays.copyOf(tags, capacity);");
+        writer.println("        numbers = Arrays.copyOf(numbers, capacity);");
+        writer.println("    }");
+
+        writer.println("}");
+        writer.close();
     }
 
+    /**
+     * 아레나에 노드 하나를 추가하는 메소드와 필드를 읽는 메소드를 출력한다.
+     * @param writer
+     * @param baseName
+     * @param typeName
+     * @param fields
+     */
+    private static void defineArenaType(PrintWriter writer, String baseName, String typeName, String[] fields) {
+        String[] columns = new String[fields.length];
+        String[] params = new String[fields.length];
+        int children = 0;
+        int refs = 0;
+
+        // 필드마다 담을 배열을 정한다.
+        for (int i = 0; i < fields.length; i++) {
+            String fieldType = fields[i].split(" ")[0];
+            String name = fields[i].split(" ")[1];
+            if (fieldType.equals(baseName)) {
+                if (children == 2) throw new IllegalArgumentException(typeName + " has more than two children.");
+                columns[i] = children++ == 0 ? "lefts" : "rights";
+                params[i] = "int " + name;
+            } else {
+                if (refs == 1) throw new IllegalArgumentException(typeName + " has more than one non-child field.");
+                refs++;
+                if (!fieldType.equals("Token") && !fieldType.equals("Object")) {
+                    throw new IllegalArgumentException(typeName + " has a field of unsupported type " + fieldType + ".");
+                }
+                columns[i] = fieldType.equals("Token") ? "refs" : "tags";
+                params[i] = fieldType.equals("Token") ? "int " + name : "byte tag, double number, int ref";
+            }
+        }
+
+        // 노드를 추가하는 메소드
+        String prefix = Character.toLowerCase(typeName.charAt(0)) + typeName.substring(1);
+        String node = baseName.toLowerCase();
+        writer.println();
+        writer.println("    int " + prefix + "(" + String.join(", ", params) + ") {");
+        writer.println("        int " + node + " = add(" + typeName.toUpperCase() + ");");
+        for (int i = 0; i < fields.length; i++) {
+            String name = fields[i].split(" ")[1];
+            if (columns[i].equals("tags")) {
+                writer.println("        tags[" + node + "] = tag;");
+                writer.println("        numbers[" + node + "] = number;");
+                writer.println("        refs[" + node + "] = ref;");
+            } else {
+                writer.println("        " + columns[i] + "[" + baseName.toLowerCase() + "] = " + name + ";");
+            }
+        }
+        writer.println("        return " + baseName.toLowerCase() + ";");
+        writer.println("    }");
+
+        // 필드를 읽는 메소드
+        for (int i = 0; i < fields.length; i++) {
+            if (columns[i].equals("tags")) {
+                defineArenaGetter(writer, "byte", prefix + "Tag", node, "tags[" + node + "]");
+                defineArenaGetter(writer, "double", prefix + "Number", node, "numbers[" + node + "]");
+                defineArenaGetter(writer, "int", prefix + "Ref", node, "refs[" + node + "]");
+                defineArenaGetter(writer, "String", prefix + "String", node, "tokens.symbolTable.name(refs[" + node + "])");
+                continue;
+            }
+
+            String name = fields[i].split(" ")[1];
+            String getter = prefix + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            defineArenaGetter(writer, params[i].split(" ")[0], getter, node, columns[i] + "[" + node + "]");
+        }
+    }
+
+    private static void defineArenaGetter(PrintWriter writer, String returnType, String getter, String node, String value) {
+        writer.println();
+        writer.println("    " + returnType + " " + getter + "(int " + node + ") {");
+        writer.println("        return " + value + ";");
+        writer.println("    }");
+    }
 }